@@ -0,0 +1,177 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Front end that memory-maps the source file and splits each statement into
+ * tokens that are just offset/length slices of the mapped bytes, separated
+ * where Pass1Assembler.isSeparator says so (the same rule processLine
+ * uses). Mnemonics, registers and condition codes are matched against the
+ * keyword table without allocating and come back as the table's own String;
+ * only other tokens (symbols, literals, constants) are turned into new
+ * Strings.
+ *
+ * Files larger than one mapping window are mapped window by window; a window
+ * always starts at the beginning of a line.
+ */
+class MappedSourceReader implements Closeable {
+    private static final long WINDOW = 1L << 28;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer buf;
+    private long windowStart;
+    private int pos;
+
+    private int[] start = new int[8];   // grown for longer statements
+    private int[] len = new int[8];
+    private int count;
+    private int lineStart;
+    private int lineEnd;
+
+    private final String[] keywords;
+    private final int mask;
+
+    MappedSourceReader(String filename, Collection<String> keywordList) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        fileSize = channel.size();
+        map(0);
+
+        int size = 16;
+        while (size < keywordList.size() * 4) size <<= 1;
+        keywords = new String[size];
+        mask = size - 1;
+        for (String k : keywordList) {
+            int slot = spread(k.hashCode()) & mask;
+            while (keywords[slot] != null) slot = (slot + 1) & mask;
+            keywords[slot] = k;
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, fileSize - position));
+        pos = 0;
+    }
+
+    /**
+     * Moves to the next line and tokenises it.
+     *
+     * @return false at end of file.
+     */
+    boolean nextLine() throws IOException {
+        if (windowStart + pos >= fileSize) return false;
+
+        int eol = findEndOfLine(pos);
+        if (eol == buf.limit() && windowStart + eol < fileSize) {
+            // line runs past this window, remap starting at the line
+            map(windowStart + pos);
+            eol = findEndOfLine(0);
+            if (eol == buf.limit() && windowStart + eol < fileSize) {
+                throw new IOException("Line longer than " + WINDOW + " bytes at offset " + windowStart);
+            }
+        }
+
+        lineStart = pos;
+        lineEnd = eol;
+        count = 0;
+        int i = pos;
+        while (i < eol) {
+            while (i < eol && Pass1Assembler.isSeparator(buf.get(i) & 0xff)) i++;
+            if (i == eol) break;
+            int s = i;
+            while (i < eol && !Pass1Assembler.isSeparator(buf.get(i) & 0xff)) i++;
+            if (count == start.length) {
+                start = Arrays.copyOf(start, 2 * count);
+                len = Arrays.copyOf(len, 2 * count);
+            }
+            start[count] = s;
+            len[count] = i - s;
+            count++;
+        }
+        pos = eol < buf.limit() ? eol + 1 : eol;
+        return true;
+    }
+
+    private int findEndOfLine(int from) {
+        int limit = buf.limit();
+        int i = from;
+        while (i < limit && buf.get(i) != '\n') i++;
+        return i;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return The keyword table's String if token i is a keyword, otherwise null.
+     */
+    String keyword(int i) {
+        int s = start[i];
+        int n = len[i];
+        int h = 0;
+        for (int j = 0; j < n; j++) h = 31 * h + (buf.get(s + j) & 0xff);
+
+        int slot = spread(h) & mask;
+        String k;
+        while ((k = keywords[slot]) != null) {
+            if (k.length() == n && matches(k, s, n)) return k;
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private boolean matches(String k, int s, int n) {
+        for (int j = 0; j < n; j++) {
+            if (k.charAt(j) != (buf.get(s + j) & 0xff)) return false;
+        }
+        return true;
+    }
+
+    private String copy(int s, int n) {
+        byte[] bytes = new byte[n];
+        for (int j = 0; j < n; j++) bytes[j] = buf.get(s + j);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    String text(int i) {
+        return copy(start[i], len[i]);
+    }
+
+    /**
+     * @return Token i as a String: keywords are shared, anything else is copied out.
+     */
+    String token(int i) {
+        String k = keyword(i);
+        return k != null ? k : text(i);
+    }
+
+    /**
+     * Fills tokens[] with the current line's count() tokens.
+     *
+     * @return tokens, or a larger array if it was too short for them.
+     */
+    String[] tokens(String[] tokens) {
+        if (tokens.length < count) {
+            tokens = new String[Math.max(count, 2 * tokens.length)];
+        }
+        for (int i = 0; i < count; i++) tokens[i] = token(i);
+        return tokens;
+    }
+
+    String line() {
+        return copy(lineStart, lineEnd - lineStart);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
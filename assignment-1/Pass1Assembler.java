@@ -4,6 +4,8 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -112,7 +114,10 @@ public class Pass1Assembler {
     private List<SymbolTableEntry> SYMTAB;
     private List<LiteralTableEntry> LITTAB;
     private List<PoolTableEntry> POOLTAB;
+    private Map<String, Integer> literalIndex; // literal value -> 0-based index of its first LITTAB entry
     private List<String> intermediateCode;
+    private BufferedWriter icWriter; // Set in streaming mode; intermediateCode then stays empty
+    private boolean quiet; // Suppresses the per-statement debug print
 
     // Hardcoded Tables
     private Map<String, MOTEntry> MOT; // Machine Opcode Table
@@ -128,6 +133,7 @@ public class Pass1Assembler {
         SYMTAB = new ArrayList<>();
         LITTAB = new ArrayList<>();
         POOLTAB = new ArrayList<>();
+        literalIndex = new HashMap<>();
         intermediateCode = new ArrayList<>();
 
         // Initialize POOLTAB with the first entry
@@ -179,14 +185,62 @@ public class Pass1Assembler {
      * Processes a single line of assembly code.
      *
      * @param line The assembly code line to process.
+     * @throws IOException If the line cannot be written in streaming mode.
      */
-    public void processLine(String line) {
-        line = line.trim();
-        if (line.isEmpty()) {
+    public void processLine(String line) throws IOException {
+        List<String> tokens = split(line);
+        if (tokens.isEmpty()) {
             return;
         }
 
-        String[] tokens = line.split("\\s+");
+        processTokens(tokens.toArray(new String[0]), tokens.size());
+    }
+
+    /**
+     * Splits a line into tokens at isSeparator characters.
+     *
+     * @param line The assembly code line.
+     * @return The line's tokens, empty for a blank line.
+     */
+    static List<String> split(String line) {
+        List<String> tokens = new ArrayList<>();
+        int n = line.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && isSeparator(line.charAt(i))) i++;
+            if (i == n) break;
+            int start = i;
+            while (i < n && !isSeparator(line.charAt(i))) i++;
+            tokens.add(line.substring(start, i));
+        }
+        return tokens;
+    }
+
+    /**
+     * Blanks, tabs, other control characters and commas separate tokens, so
+     * "AREG,X", "AREG, X" and "AREG X" all give the operands AREG and X.
+     * split and MappedSourceReader both go by this, so --mmap sees the same
+     * tokens as reading line by line.
+     *
+     * @param c The character, or a source byte as 0..255.
+     * @return true if c separates tokens.
+     */
+    static boolean isSeparator(int c) {
+        return c <= ' ' || c == ',';
+    }
+
+    /**
+     * Processes one statement that has already been split into tokens, either
+     * by processLine or by MappedSourceReader.
+     *
+     * @param tokens The statement's tokens; only the first count are used.
+     * @param count  The number of tokens in the statement.
+     * @throws IOException If the line cannot be written in streaming mode.
+     */
+    public void processTokens(String[] tokens, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
 
         String label = null;
         String opcode;
@@ -194,29 +248,31 @@ public class Pass1Assembler {
         String operand2 = null;
 
         // Determine if there's a label
-        if (tokens.length > 1 && !MOT.containsKey(tokens[0]) && !POT.containsKey(tokens[0])) {
+        if (count > 1 && !MOT.containsKey(tokens[0]) && !POT.containsKey(tokens[0])) {
             label = tokens[0];
             opcode = tokens[1];
-            if (tokens.length > 2) {
+            if (count > 2) {
                 operand1 = tokens[2].replace(",", ""); // Remove comma from operand1
             }
-            if (tokens.length > 3) {
+            if (count > 3) {
                 operand2 = tokens[3];
             }
         } 
         else 
         {
             opcode = tokens[0];
-            if (tokens.length > 1) {
+            if (count > 1) {
                 operand1 = tokens[1].replace(",", ""); // Remove comma from operand1
             }
-            if (tokens.length > 2) {
+            if (count > 2) {
                 operand2 = tokens[2];
             }
         }
 
         // --- DEBUG PRINT: Added to show which opcode is being processed ---
-        System.out.println("  -> Identified Opcode: " + opcode + (label != null ? ", Label: " + label : ""));
+        if (!quiet) {
+            System.out.println("  -> Identified Opcode: " + opcode + (label != null ? ", Label: " + label : ""));
+        }
         // --- END DEBUG PRINT ---
 
         // --- START OF MODIFICATION FOR USER'S RULE ---
@@ -251,23 +307,23 @@ public class Pass1Assembler {
             switch (potEntry.mnemonic) {
                 case "START":
                     LC = Integer.parseInt(operand1);
-                    intermediateCode.add(String.format("(%s, %s) (C, %s)",
+                    emit(String.format("(%s, %s) (C, %s)",
                             potEntry.opcodeClass, potEntry.opcodeValue, operand1));
                     break;
                 case "END":
                     processLiteralsAtEnd();
-                    intermediateCode.add(String.format("(%s, %s)",
+                    emit(String.format("(%s, %s)",
                             potEntry.opcodeClass, potEntry.opcodeValue));
                     break;
                 case "LTORG":
                     processLTORG();
-                    intermediateCode.add(String.format("(%s, %s)",
+                    emit(String.format("(%s, %s)",
                             potEntry.opcodeClass, potEntry.opcodeValue));
                     break;
                 case "ORIGIN":
                     try {
                         LC = Integer.parseInt(operand1); // Assuming operand1 is a direct integer for simplicity
-                        intermediateCode.add(String.format("(%s, %s) (C, %s)",
+                        emit(String.format("(%s, %s) (C, %s)",
                                 potEntry.opcodeClass, potEntry.opcodeValue, operand1));
                     } catch (NumberFormatException e) {
                         System.err.println("Error: Invalid operand for ORIGIN. Expected an integer, but got '" + operand1 + "'. IC not generated for this line.");
@@ -300,7 +356,7 @@ public class Pass1Assembler {
                     } else if (label == null) {
                         System.err.println("Error: EQU statement without a label. Skipping IC generation.");
                     }
-                    intermediateCode.add(String.format("(%s, %s)",
+                    emit(String.format("(%s, %s)",
                             potEntry.opcodeClass, potEntry.opcodeValue)); // No operand in IC for EQU
                     break;
                 case "DS":
@@ -311,7 +367,7 @@ public class Pass1Assembler {
                             SYMTAB.get(symIndex).length = dsSize;
                         }
                     }
-                    intermediateCode.add(String.format("(%s, %s) (C, %s)",
+                    emit(String.format("(%s, %s) (C, %s)",
                             potEntry.opcodeClass, potEntry.opcodeValue, operand1));
                     LC += dsSize;
                     break;
@@ -323,7 +379,7 @@ public class Pass1Assembler {
                             SYMTAB.get(symIndex).length = 1; // DC typically reserves 1 word
                         }
                     }
-                    intermediateCode.add(String.format("(%s, %s) (C, %s)",
+                    emit(String.format("(%s, %s) (C, %s)",
                             potEntry.opcodeClass, potEntry.opcodeValue, operand1.replace("'", "")));
                     LC += 1; // DC typically reserves 1 word
                     break;
@@ -360,6 +416,7 @@ public class Pass1Assembler {
                     if (litIndex == -1) {
                         // Add to LITTAB
                         LITTAB.add(new LiteralTableEntry(literalValue, 0)); // Address resolved in LTORG/END
+                        literalIndex.put(literalValue, LITTAB.size() - 1);
                         litIndex = LITTAB.size(); // 1-based index
                         // Update current pool's literal count
                         POOLTAB.get(pooltab_ptr).numLiterals++;
@@ -379,13 +436,26 @@ public class Pass1Assembler {
                     icEntry.append(String.format(" (S, %02d)", symIndex));
                 }
             }
-            intermediateCode.add(icEntry.toString());
+            emit(icEntry.toString());
             LC += motEntry.length; // Increment LC by instruction length
         } else {
-            System.err.println("Error: Unknown opcode '" + opcode + "' in line: " + line);
+            System.err.println("Error: Unknown opcode '" + opcode + "' in line: "
+                    + String.join(" ", Arrays.asList(tokens).subList(0, count)));
         }
     }
 
+    /**
+     * @return Every mnemonic, register and condition code the front end should recognise.
+     */
+    public Collection<String> keywords() {
+        List<String> keywords = new ArrayList<>();
+        keywords.addAll(MOT.keySet());
+        keywords.addAll(POT.keySet());
+        keywords.addAll(REG.keySet());
+        keywords.addAll(CC.keySet());
+        return keywords;
+    }
+
     /**
      * Checks if a string represents a literal (e.g., ='1').
      *
@@ -418,12 +488,8 @@ public class Pass1Assembler {
      * @return The 0-based index if found, -1 otherwise.
      */
     private int getLiteralIndex(String literalValue) {
-        for (int i = 0; i < LITTAB.size(); i++) {
-            if (LITTAB.get(i).literal.equals(literalValue)) {
-                return i;
-            }
-        }
-        return -1;
+        Integer i = literalIndex.get(literalValue);
+        return i == null ? -1 : i;
     }
 
     /**
@@ -502,6 +568,42 @@ public class Pass1Assembler {
         System.out.println("--------------------");
     }
 
+    /**
+     * Records one line of Intermediate Code. IC refers to symbols and literals
+     * only by their table index, so a line is final as soon as it is built and
+     * forward references are resolved from SYMTAB in Pass 2. In streaming mode
+     * the line goes straight to the output file instead of being buffered.
+     *
+     * @param icLine The formatted IC line.
+     */
+    private void emit(String icLine) throws IOException {
+        if (icWriter != null) {
+            icWriter.write(icLine);
+            icWriter.write("\n");
+        } else {
+            intermediateCode.add(icLine);
+        }
+    }
+
+    /**
+     * Switches to streaming mode: IC lines are written to the file as they are
+     * generated, so memory use no longer grows with program size.
+     * @param filename The name of the file to write to.
+     */
+    public void openIntermediateCodeStream(String filename) throws IOException {
+        icWriter = new BufferedWriter(new FileWriter(filename), 1 << 16);
+        icWriter.write("----- INTERMEDIATE CODE -----\n");
+    }
+
+    /**
+     * Finishes the streamed Intermediate Code file.
+     */
+    public void closeIntermediateCodeStream() throws IOException {
+        icWriter.write("-----------------------------\n");
+        icWriter.close();
+        icWriter = null;
+    }
+
     /**
      * Writes the generated Intermediate Code to a file.
      * @param filename The name of the file to write to.
@@ -524,24 +626,72 @@ public class Pass1Assembler {
 
         String inputFileName = "input.txt"; // Default input file name
         String outputFileName = "intermediate_code.txt"; // Default output file name
+        boolean stream = false; // --stream: write IC while reading
+        boolean mmap = false;   // --mmap: read the source through MappedSourceReader
+        boolean quiet = true;   // no per-line echo and no table dumps unless --echo (--quiet is the default)
+        for (String arg : args) {
+            if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.equals("--mmap")) {
+                mmap = true;
+            } else if (arg.equals("--echo")) {
+                quiet = false;
+            } else if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        assembler.quiet = quiet;
+
+        if (stream) {
+            assembler.openIntermediateCodeStream(outputFileName);
+        }
 
         System.out.println("Reading assembly program from: " + inputFileName);
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFileName))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println("Processing: " + line); // Print line being processed to console
-                assembler.processLine(line);
+        if (mmap) {
+            try (MappedSourceReader reader = new MappedSourceReader(inputFileName, assembler.keywords())) {
+                String[] tokens = new String[8];
+                while (reader.nextLine()) {
+                    if (!stream && !quiet) {
+                        System.out.println("Processing: " + reader.line());
+                    }
+                    tokens = reader.tokens(tokens);
+                    assembler.processTokens(tokens, reader.count());
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading input file: " + e.getMessage());
+                System.err.println("Please ensure '" + inputFileName + "' exists in the same directory.");
+                return;
+            }
+        } else {
+            try (BufferedReader reader = new BufferedReader(new FileReader(inputFileName))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!stream && !quiet) {
+                        System.out.println("Processing: " + line); // Print line being processed to console
+                    }
+                    assembler.processLine(line);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading input file: " + e.getMessage());
+                System.err.println("Please ensure '" + inputFileName + "' exists in the same directory.");
+                return; // Exit if input file cannot be read
             }
-        } catch (IOException e) {
-            System.err.println("Error reading input file: " + e.getMessage());
-            System.err.println("Please ensure '" + inputFileName + "' exists in the same directory.");
-            return; // Exit if input file cannot be read
         }
 
         // Write results to file and print tables to console
-        assembler.writeIntermediateCodeToFile(outputFileName);
-        assembler.printSymbolTable();
-        assembler.printLiteralTable();
-        assembler.printPoolTable();
+        if (stream) {
+            assembler.closeIntermediateCodeStream();
+            System.out.println("\nIntermediate Code streamed to: " + outputFileName);
+        } else {
+            assembler.writeIntermediateCodeToFile(outputFileName);
+        }
+        if (!quiet) {
+            assembler.printSymbolTable();
+            assembler.printLiteralTable();
+            assembler.printPoolTable();
+        }
     }
 }
@@ -0,0 +1,210 @@
+import java.util.*;
+
+// The operand of ORIGIN or EQU, parsed once into the linear form
+//
+//   constant + coefficients[0] * symbols[0] + coefficients[1] * symbols[1] + ...
+//
+// which is all an address expression can be: numbers are folded while
+// parsing, and a symbol can only be scaled by a constant. Grammar:
+//
+//   expr   := term (('+' | '-') term)*
+//   term   := factor (('*' | '/') factor)*
+//   factor := ('+' | '-') factor | '(' expr ')' | number | symbol
+//
+// so LOOP+2, BASE-(N*4), 2*(A-B) + 12/4 and plain 105 all work. A product
+// of two symbols has no address and is rejected, and so is any division but
+// of one constant by another: (A+B)/2 is refused even if A+B is even.
+// A symbol may appear more than once; its terms are merged (A-A+3 is just 3).
+class AddressExpression
+{
+    final int constant;
+    final String[] symbols;
+    final int[] coefficients;
+
+    private AddressExpression(int constant, String[] symbols, int[] coefficients)
+    {
+        this.constant = constant;
+        this.symbols = symbols;
+        this.coefficients = coefficients;
+    }
+
+    boolean isConstant()
+    {
+        return symbols.length == 0;
+    }
+
+    // SYM, SYM+n or SYM-n: the forms the IC can carry as (S,nn)+n
+    boolean isSymbolPlusConstant()
+    {
+        return symbols.length == 1 && coefficients[0] == 1;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < symbols.length; i++)
+        {
+            int c = coefficients[i];
+            if (c < 0) sb.append(sb.length() == 0 ? "-" : " - ");
+            else if (sb.length() > 0) sb.append(" + ");
+            if (Math.abs(c) != 1) sb.append(Math.abs(c)).append('*');
+            sb.append(symbols[i]);
+        }
+        if (constant != 0 || sb.length() == 0)
+        {
+            if (sb.length() == 0) sb.append(constant);
+            else sb.append(constant < 0 ? " - " : " + ").append(Math.abs(constant));
+        }
+        return sb.toString();
+    }
+
+    // throws IllegalArgumentException with a message fit for the error report
+    static AddressExpression parse(String text)
+    {
+        Parser p = new Parser(text);
+        Linear e = p.expr();
+        if (p.pos < text.length())
+        {
+            throw new IllegalArgumentException("unexpected '" + text.charAt(p.pos) + "' in " + text);
+        }
+        List<String> names = new ArrayList<>();
+        List<Integer> coefs = new ArrayList<>();
+        for (Map.Entry<String,Integer> t : e.terms.entrySet())
+        {
+            if (t.getValue() == 0) continue;
+            names.add(t.getKey());
+            coefs.add(t.getValue());
+        }
+        int[] c = new int[coefs.size()];
+        for (int i = 0; i < c.length; i++) c[i] = coefs.get(i);
+        return new AddressExpression(e.constant, names.toArray(new String[0]), c);
+    }
+
+    // constant + sum of coefficient * symbol while parsing
+    private static class Linear
+    {
+        int constant;
+        final LinkedHashMap<String,Integer> terms = new LinkedHashMap<>();
+
+        boolean isConstant()
+        {
+            for (int c : terms.values())
+            {
+                if (c != 0) return false;
+            }
+            return true;
+        }
+
+        Linear add(Linear o, int sign)
+        {
+            constant += sign * o.constant;
+            for (Map.Entry<String,Integer> t : o.terms.entrySet())
+            {
+                terms.merge(t.getKey(), sign * t.getValue(), Integer::sum);
+            }
+            return this;
+        }
+
+        Linear scale(int k)
+        {
+            constant *= k;
+            terms.replaceAll((name, c) -> c * k);
+            return this;
+        }
+    }
+
+    private static class Parser
+    {
+        final String text;
+        int pos;
+
+        Parser(String text)
+        {
+            this.text = text;
+        }
+
+        Linear expr()
+        {
+            Linear e = term();
+            while (true)
+            {
+                skipSpaces();
+                if (peek('+')) { pos++; e.add(term(), 1); }
+                else if (peek('-')) { pos++; e.add(term(), -1); }
+                else return e;
+            }
+        }
+
+        Linear term()
+        {
+            Linear e = factor();
+            while (true)
+            {
+                skipSpaces();
+                if (peek('*'))
+                {
+                    pos++;
+                    Linear f = factor();
+                    if (f.isConstant()) e.scale(f.constant);
+                    else if (e.isConstant()) e = f.scale(e.constant);
+                    else throw new IllegalArgumentException("product of two symbols in " + text);
+                }
+                else if (peek('/'))
+                {
+                    pos++;
+                    Linear f = factor();
+                    if (!f.isConstant() || !e.isConstant())
+                    {
+                        throw new IllegalArgumentException("only constants can be divided in " + text);
+                    }
+                    if (f.constant == 0) throw new IllegalArgumentException("division by zero in " + text);
+                    e.constant /= f.constant;
+                }
+                else return e;
+            }
+        }
+
+        Linear factor()
+        {
+            skipSpaces();
+            if (pos == text.length()) throw new IllegalArgumentException("operand missing in " + text);
+            char ch = text.charAt(pos);
+            if (ch == '+') { pos++; return factor(); }
+            if (ch == '-') { pos++; return factor().scale(-1); }
+            if (ch == '(')
+            {
+                pos++;
+                Linear e = expr();
+                skipSpaces();
+                if (!peek(')')) throw new IllegalArgumentException("missing ')' in " + text);
+                pos++;
+                return e;
+            }
+            int start = pos;
+            Linear e = new Linear();
+            if (Character.isDigit(ch))
+            {
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) pos++;
+                e.constant = Integer.parseInt(text.substring(start, pos));
+                return e;
+            }
+            if (Character.isLetter(ch) || ch == '_')
+            {
+                while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) pos++;
+                e.terms.put(text.substring(start, pos), 1);
+                return e;
+            }
+            throw new IllegalArgumentException("unexpected '" + ch + "' in " + text);
+        }
+
+        boolean peek(char ch)
+        {
+            return pos < text.length() && text.charAt(pos) == ch;
+        }
+
+        void skipSpaces()
+        {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.lang.management.*;
+import java.util.*;
+import javax.management.*;
+
+// Where an assembler pass spends its time and memory: units processed per
+// second (statements for pass 1, IC records for pass 2), time and bytes
+// allocated per phase, other counters, and the final table sizes. Off unless
+// --metrics is given. When on, every phase change reads the clock and the
+// thread's allocation counter, so the figures include a little of their own
+// cost.
+class AssemblerMetrics implements AssemblerMetricsMXBean
+{
+    static final int NONE = -1;
+
+    // pass 1's phases
+    static final int IO = 0;          // reading the source, writing output files
+    static final int TOKENIZE = 1;    // splitting lines into tokens
+    static final int ANALYSE = 2;     // opcode and table lookups, LC and table updates
+    static final int EMIT = 3;        // handing IC records to the list or sink
+    static final String[] PASS1_PHASES = { "io", "tokenize", "analyse", "emit" };
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final String unit;
+    private final String[] phases;
+    private final long[] nanos;
+    private final long[] bytes;
+    private int phase = NONE;
+    private long mark;
+    private long allocMark;
+    private long start;
+    private long end;
+
+    long count;    // units processed
+    private final Map<String,Long> counters = new LinkedHashMap<>();
+    private final Map<String,Integer> tables = new LinkedHashMap<>();
+
+    // unit names what count counts; phases[i] is the name of phase i
+    AssemblerMetrics(String unit, String... phases)
+    {
+        this.unit = unit;
+        this.phases = phases;
+        nanos = new long[phases.length];
+        bytes = new long[phases.length];
+    }
+
+    private static com.sun.management.ThreadMXBean threads()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) bean;
+            if (t.isThreadAllocatedMemorySupported())
+            {
+                t.setThreadAllocatedMemoryEnabled(true);
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private static long allocated()
+    {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // charges everything since the last call to the phase that was running,
+    // then starts next (NONE stops the clock)
+    void enter(int next)
+    {
+        long now = System.nanoTime();
+        long alloc = allocated();
+        if (phase != NONE)
+        {
+            nanos[phase] += now - mark;
+            bytes[phase] += alloc - allocMark;
+        }
+        else if (start == 0)
+        {
+            start = now;
+        }
+        phase = next;
+        mark = now;
+        allocMark = alloc;
+        end = now;
+    }
+
+    // one more of whatever counter name counts
+    void increment(String name)
+    {
+        counters.merge(name, 1L, Long::sum);
+    }
+
+    void table(String name, int size)
+    {
+        tables.put(name, size);
+    }
+
+    // makes the figures visible over JMX as assembler:type=<name>
+    void register(String name)
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("assembler:type=" + name));
+        }
+        catch (JMException e)
+        {
+            System.err.println("Warning: metrics not registered with JMX: " + e.getMessage());
+        }
+    }
+
+    public String getUnit()
+    {
+        return unit;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public double getCountPerSecond()
+    {
+        long busy = end - start;
+        return busy > 0 ? count * 1e9 / busy : 0;
+    }
+
+    public Map<String,Long> getCounters()
+    {
+        return new LinkedHashMap<>(counters);
+    }
+
+    public long getElapsedMillis()
+    {
+        return (end - start) / 1000000;
+    }
+
+    public Map<String,Long> getPhaseMillis()
+    {
+        Map<String,Long> m = new LinkedHashMap<>();
+        for (int i = 0; i < phases.length; i++) m.put(phases[i], nanos[i] / 1000000);
+        return m;
+    }
+
+    public Map<String,Long> getPhaseAllocatedBytes()
+    {
+        Map<String,Long> m = new LinkedHashMap<>();
+        for (int i = 0; i < phases.length; i++) m.put(phases[i], bytes[i]);
+        return m;
+    }
+
+    public Map<String,Integer> getTableSizes()
+    {
+        return new LinkedHashMap<>(tables);
+    }
+
+    public String getJsonSummary()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"").append(unit).append("\": ").append(count);
+        for (Map.Entry<String,Long> e : counters.entrySet())
+        {
+            sb.append(",\n  \"").append(e.getKey()).append("\": ").append(e.getValue());
+        }
+        sb.append(",\n  \"elapsedMillis\": ").append(getElapsedMillis());
+        sb.append(",\n  \"").append(unit).append("PerSecond\": ").append(Math.round(getCountPerSecond()));
+        sb.append(",\n  \"phases\": {");
+        for (int i = 0; i < phases.length; i++)
+        {
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    \"").append(phases[i]).append("\": { \"millis\": ").append(nanos[i] / 1000000)
+              .append(", \"allocatedBytes\": ").append(bytes[i]).append(" }");
+        }
+        sb.append("\n  },\n  \"tables\": {");
+        boolean first = true;
+        for (Map.Entry<String,Integer> e : tables.entrySet())
+        {
+            sb.append(first ? " " : ", ").append('"').append(e.getKey()).append("\": ").append(e.getValue());
+            first = false;
+        }
+        sb.append(" }\n}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,15 @@
+import java.util.*;
+
+// What AssemblerMetrics shows over JMX (jconsole: assembler / Pass1 or Pass2).
+public interface AssemblerMetricsMXBean
+{
+    String getUnit();
+    long getCount();
+    double getCountPerSecond();
+    Map<String,Long> getCounters();
+    long getElapsedMillis();
+    Map<String,Long> getPhaseMillis();
+    Map<String,Long> getPhaseAllocatedBytes();
+    Map<String,Integer> getTableSizes();
+    String getJsonSummary();
+}
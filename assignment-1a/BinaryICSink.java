@@ -0,0 +1,52 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// Compact IC for Pass2Assembler: a 4 byte magic number followed by fixed
+// 12 byte records
+//
+//   byte class, byte opcode, byte reg, byte operand kind,
+//   int operand index, int constant
+//
+// all big-endian, so pass 2 can decode a record with a few ByteBuffer gets.
+class BinaryICSink implements ICSink
+{
+    static final int MAGIC = 0x49434231;    // "ICB1"
+    static final int RECORD_SIZE = 12;
+
+    private final FileChannel channel;
+    private final ByteBuffer buf;
+
+    BinaryICSink(String filename) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buf = ByteBuffer.allocateDirect(RECORD_SIZE * 4096);
+        buf.putInt(MAGIC);
+    }
+
+    public void write(ICRecord record) throws IOException
+    {
+        if (buf.remaining() < RECORD_SIZE) flush();
+        buf.put((byte) record.cls);
+        buf.put((byte) record.opcode);
+        buf.put((byte) record.reg);
+        buf.put((byte) record.kind);
+        buf.putInt(record.index);
+        buf.putInt(record.constant);
+    }
+
+    private void flush() throws IOException
+    {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    public void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,65 @@
+// One statement of intermediate code, kept as plain ints so that pass 1 can
+// hand it to pass 2 without going through text. toString() gives back the
+// same text that Pass1Assembler has always written to IntermediateCode.txt.
+class ICRecord
+{
+    static final int IS = 0;
+    static final int AD = 1;
+    static final int DL = 2;
+
+    static final int NONE = 0;
+    static final int SYMBOL = 1;
+    static final int LITERAL = 2;
+    static final int CONSTANT = 3;
+
+    static final int NO_REG = -1;
+    static final int NO_INDEX = -1;
+
+    int cls;         // IS, AD or DL
+    int opcode;      // opcode value within the class
+    int reg;         // register / condition code, NO_REG if absent
+    int kind;        // NONE, SYMBOL, LITERAL or CONSTANT
+    int index;       // SYMTAB / LITTAB index for SYMBOL and LITERAL operands
+    int constant;    // CONSTANT value, or the +/- offset of a SYMBOL operand
+
+    // in memory only, for PeepholeOptimizer; the text and binary IC do not
+    // carry them
+    int label = NO_INDEX;      // SYMTAB index of the statement's label
+    int literal = NO_INDEX;    // LITTAB index, if this DC is a literal pool word
+
+    ICRecord(int cls, int opcode, int reg, int kind, int index, int constant)
+    {
+        this.cls = cls;
+        this.opcode = opcode;
+        this.reg = reg;
+        this.kind = kind;
+        this.index = index;
+        this.constant = constant;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        if (cls == IS)
+        {
+            sb.append(String.format("(IS, %02d)", opcode));
+            if (reg != NO_REG) sb.append(String.format(" (%02d)", reg));
+            if (kind == SYMBOL) sb.append(String.format(" (S, %02d)", index));
+            else if (kind == LITERAL) sb.append(String.format(" (L, %02d)", index));
+            return sb.toString();
+        }
+
+        sb.append(String.format("(%s,%02d)", cls == AD ? "AD" : "DL", opcode));
+        if (kind == CONSTANT)
+        {
+            sb.append(String.format(" (C,%d)", constant));
+        }
+        else if (kind == SYMBOL)
+        {
+            sb.append(String.format(" (S,%02d)", index));
+            if (constant > 0) sb.append("+").append(constant);
+            else if (constant < 0) sb.append("-").append(-constant);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,13 @@
+import java.io.*;
+
+// Destination for IC records in streaming mode.
+interface ICSink
+{
+    void write(ICRecord record) throws IOException;
+    void close() throws IOException;
+
+    // Told when a symbol or literal gets its address, for consumers that
+    // translate while pass 1 is still running. File sinks ignore these.
+    default void defineSymbol(int index, int address) throws IOException { }
+    default void defineLiteral(int index, int address) throws IOException { }
+}
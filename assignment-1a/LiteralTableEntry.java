@@ -0,0 +1,11 @@
+class LiteralTableEntry
+{
+    String literal;
+    int address;
+
+    LiteralTableEntry(String literal, int address)
+    {
+        this.literal = literal;
+        this.address = address;
+    }
+}
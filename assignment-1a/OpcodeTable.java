@@ -0,0 +1,119 @@
+import java.util.*;
+
+// Every mnemonic, directive, register and condition code the assembler knows,
+// compiled into one collision-free hash table at class load. lookup() costs a
+// single probe and a String compare and returns a primitive code
+//
+//   (kind << 8) | value
+//
+// where kind is ICRecord.IS / AD / DL, REG or CC and value is the number that
+// goes into the IC. Unknown tokens give -1.
+class OpcodeTable
+{
+    static final int REG = 3;
+    static final int CC = 4;
+
+    // constant expressions so they can be used as switch labels
+    static final int AD_START  = (ICRecord.AD << 8) | 1;
+    static final int AD_END    = (ICRecord.AD << 8) | 2;
+    static final int AD_ORIGIN = (ICRecord.AD << 8) | 3;
+    static final int AD_EQU    = (ICRecord.AD << 8) | 4;
+    static final int AD_LTORG  = (ICRecord.AD << 8) | 5;
+    static final int AD_EXTRN  = (ICRecord.AD << 8) | 6;
+    static final int AD_ENTRY  = (ICRecord.AD << 8) | 7;
+    static final int DL_DS     = (ICRecord.DL << 8) | 1;
+    static final int DL_DC     = (ICRecord.DL << 8) | 2;
+
+    private static final String[] NAMES = {
+        "START", "END", "ORIGIN", "EQU", "LTORG", "EXTRN", "ENTRY", "DS", "DC",
+        "STOP", "ADD", "SUB", "MULT", "MOVER", "MOVEM", "COMP", "BC", "DIV", "READ", "PRINT",
+        "AREG", "BREG", "CREG", "DREG",
+        "LT", "LTE", "EQ", "GT", "GTE", "ANY",
+    };
+    private static final int[] CODES = {
+        AD_START, AD_END, AD_ORIGIN, AD_EQU, AD_LTORG, AD_EXTRN, AD_ENTRY, DL_DS, DL_DC,
+        code(ICRecord.IS, 0), code(ICRecord.IS, 1), code(ICRecord.IS, 2), code(ICRecord.IS, 3),
+        code(ICRecord.IS, 4), code(ICRecord.IS, 5), code(ICRecord.IS, 6), code(ICRecord.IS, 7),
+        code(ICRecord.IS, 8), code(ICRecord.IS, 9), code(ICRecord.IS, 10),
+        code(REG, 1), code(REG, 2), code(REG, 3), code(REG, 4),
+        code(CC, 1), code(CC, 2), code(CC, 3), code(CC, 4), code(CC, 5), code(CC, 6),
+    };
+
+    // changes whenever a name or code above does; cached assemblies are keyed on it
+    static final int VERSION = 31 * Arrays.hashCode(NAMES) + Arrays.hashCode(CODES);
+
+    // every imperative statement is one word long
+    static final int IS_LENGTH = 1;
+
+    private static final String[] keys;
+    private static final int[] values;
+    private static final int mask;
+
+    static
+    {
+        // grow the table until every name lands in its own slot
+        int size = 32;
+        String[] k;
+        int[] v;
+        search:
+        while (true)
+        {
+            k = new String[size];
+            v = new int[size];
+            for (int i = 0; i < NAMES.length; i++)
+            {
+                int slot = spread(NAMES[i].hashCode()) & (size - 1);
+                if (k[slot] != null)
+                {
+                    size <<= 1;
+                    continue search;
+                }
+                k[slot] = NAMES[i];
+                v[slot] = CODES[i];
+            }
+            break;
+        }
+        keys = k;
+        values = v;
+        mask = size - 1;
+    }
+
+    private static int code(int kind, int value)
+    {
+        return (kind << 8) | value;
+    }
+
+    private static int spread(int h)
+    {
+        return h ^ (h >>> 16);
+    }
+
+    static int lookup(String token)
+    {
+        int slot = spread(token.hashCode()) & mask;
+        String key = keys[slot];
+        return key != null && key.equals(token) ? values[slot] : -1;
+    }
+
+    static int kind(int code)
+    {
+        return code >> 8;
+    }
+
+    static int value(int code)
+    {
+        return code & 0xff;
+    }
+
+    // true for machine instructions and assembler directives, i.e. tokens
+    // that can be in the opcode field
+    static boolean isOpcode(int code)
+    {
+        return code >= 0 && kind(code) <= ICRecord.DL;
+    }
+
+    static List<String> keywords()
+    {
+        return Arrays.asList(NAMES);
+    }
+}
@@ -1,31 +1,6 @@
 import java.io.*;
 import java.util.*;
-
-class SymbolTableEntry
-{
-    String symbol;
-    int address;
-    int length;
-
-    SymbolTableEntry(String symbol, int address, int length)
-    {
-        this.symbol = symbol;
-        this.address = address;
-        this.length = length;
-    }
-}
-
-class LiteralTableEntry
-{
-    String literal;
-    int address;
-
-    LiteralTableEntry(String literal, int address)
-    {
-        this.literal = literal;
-        this.address = address;
-    }
-}
+import java.util.concurrent.ConcurrentMap;
 
 class PoolTableEntry
 {
@@ -39,49 +14,43 @@ class PoolTableEntry
     }
 }
 
-class POTEntry
+class Pass1Assembler 
 {
-    String mnemonic;
-    String opcodetype;
-    String opcodeval;
-    
-    POTEntry(String mnemonic, String opcodetype, String opcodeval)
-    {
-        this.mnemonic = mnemonic;
-        this.opcodetype = opcodetype;
-        this.opcodeval = opcodeval;
-    }
-}
 
-class MOTEntry
-{
-    String mnemonic;
-    String opcodetype;
-    String opcodeval;
-    int length;
+    // per instance, so several assemblers can run side by side in one JVM
+    private SymbolTable SYMTAB;
+    private List<LiteralTableEntry> LITTAB;
+    private List<PoolTableEntry> POOLTAB;
+    private List<ICRecord> IC;
+    private ICSink icSink;    // set in streaming mode, IC is then left empty
+    private List<String> ENTRIES;    // names declared ENTRY, exported at link time
+    private List<Integer> EXTRNS;    // SYMTAB indices declared EXTRN, filled in at link time
 
-    MOTEntry(String mnemonic, String opcodetype, String opcodeval, int length)
-    {
-        this.mnemonic = mnemonic;
-        this.opcodetype = opcodetype;
-        this.opcodeval = opcodeval;
-        this.length = length;
-    }
+    // literal value -> LITTAB index, for the current pool only
+    private Map<String,Integer> poolIndex;
+    // literal value -> LITTAB index of the latest placed copy, for sharing
+    // literals across pools; only indices >= sharedFloor are still safe to share
+    private Map<String,Integer> placedLiterals;
+    private int sharedFloor;
+    private boolean shareLiterals;
+    private int literalsReused;    // uses served by a literal already in the current pool
+    private int literalsShared;    // uses served by a literal placed in an earlier pool
+    private Set<Integer> sharedInPool;    // LITTAB indices the current pool took from an earlier one
+    private int wordsSaved;        // one per literal a pool did not have to place again
 
-}
+    // ORIGIN/EQU operand text -> parsed expression, so a repeated operand is parsed once
+    private Map<String,AddressExpression> expressions;
+    // EQUs that used symbols not defined yet, in the order they were seen, and
+    // SYMTAB index -> those of them still waiting for that symbol
+    private List<PendingEqu> pendingEqus;
+    private Map<Integer,List<PendingEqu>> waitingOn;
+    // ORIGIN/EQU records with symbols in their operand -> the operand, kept
+    // for PeepholeOptimizer to evaluate again; null unless optimizing
+    private Map<ICRecord,PeepholeOptimizer.AddressOperand> addressOperands;
 
-class Pass1Assembler 
-{
-
-    private static List<SymbolTableEntry> SYMTAB;
-    private static List<LiteralTableEntry> LITTAB;
-    private static List<PoolTableEntry> POOLTAB;
-    private static List<String> IC;
-
-    private static Map<String,POTEntry> POT;
-    private static Map<String,MOTEntry> MOT;
-    private static Map<String,String> REG;
-    private static Map<String,String> CC;
+    private AssemblerMetrics metrics;    // null unless collectMetrics() was called
+    private boolean quiet;               // no echo of the IC while writing it
+    // MOT, POT, REG and CC are compiled into OpcodeTable
 
     private int littab_ptr;
     private int pooltab_ptr;
@@ -89,46 +58,19 @@ class Pass1Assembler
 
     Pass1Assembler()
     {
-        POT = new HashMap<>();
-		POT.put("START", new POTEntry("START", "AD", "01"));
-		POT.put("END", new POTEntry("END", "AD", "02"));
-		POT.put("ORIGIN", new POTEntry("ORIGIN", "AD", "03"));
-		POT.put("EQU", new POTEntry("EQU", "AD", "04"));
-		POT.put("LTORG", new POTEntry("LTORG", "AD", "05"));
-		POT.put("DS", new POTEntry("DS", "DL", "01"));
-		POT.put("DC", new POTEntry("DC", "DL", "02"));
-		
-		MOT = new HashMap<>();
-		MOT.put("STOP", new MOTEntry("STOP", "IS", "00", 1));
-		MOT.put("ADD", new MOTEntry("ADD", "IS", "01", 1));
-		MOT.put("SUB", new MOTEntry("SUB", "IS", "02", 1));
-		MOT.put("MULT", new MOTEntry("MULT", "IS", "03", 1));
-		MOT.put("MOVER", new MOTEntry("MOVER", "IS", "04", 1));
-		MOT.put("MOVEM", new MOTEntry("MOVEM", "IS", "05", 1));
-		MOT.put("COMP", new MOTEntry("COMP", "IS", "06", 1));
-		MOT.put("BC", new MOTEntry("BC", "IS", "07", 1));
-		MOT.put("DIV", new MOTEntry("DIV", "IS", "08", 1));
-		MOT.put("READ", new MOTEntry("READ", "IS", "09", 1));
-		MOT.put("PRINT", new MOTEntry("PRINT", "IS", "10", 1));
-
-		REG = new HashMap<>();
-		REG.put("AREG", "01");
-		REG.put("BREG", "02");
-		REG.put("CREG", "03");
-		REG.put("DREG", "04");
-		
-		CC = new HashMap<>();
-		CC.put("LT", "01");
-		CC.put("LTE", "02");
-		CC.put("EQ", "03");
-		CC.put("GT", "04");
-		CC.put("GTE", "05");
-		CC.put("ANY", "06");
-
-		SYMTAB = new ArrayList<>();
+		SYMTAB = new SymbolTable();
 		LITTAB = new ArrayList<>();
 		POOLTAB = new ArrayList<>();
 		IC = new ArrayList<>();
+		icSink = null;
+		ENTRIES = new ArrayList<>();
+		EXTRNS = new ArrayList<>();
+		poolIndex = new HashMap<>();
+		placedLiterals = new HashMap<>();
+		sharedInPool = new HashSet<>();
+		expressions = new HashMap<>();
+		pendingEqus = new ArrayList<>();
+		waitingOn = new HashMap<>();
 
 		POOLTAB.add(new PoolTableEntry(0,0));
 		// POOLTAB.add(new PoolTableEntry(1,0)); // --- LOGICAL ERROR 1: This entry is incorrect.
@@ -141,11 +83,79 @@ class Pass1Assembler
 
     // initializeTables();
 
-    void processLine (String line)
+    private String[] lineTokens = new String[8];
+
+    void processLine (String line) throws IOException
+    {
+        if (metrics != null) metrics.enter(AssemblerMetrics.TOKENIZE);
+        int count = split(line, lineTokens);
+        if (count > lineTokens.length)
+        {
+            lineTokens = new String[Math.max(count, 2 * lineTokens.length)];
+            split(line, lineTokens);
+        }
+        processTokens(lineTokens, count);
+    }
+
+    // Splits a line into a reused array at isSeparator characters. Returns the
+    // number of tokens on the line; if that is more than tokens.length only the
+    // first ones are filled.
+    static int split(String line, String[] tokens)
+    {
+        int count = 0;
+        int n = line.length();
+        int i = 0;
+        while (i < n)
+        {
+            while (i < n && isSeparator(line.charAt(i))) i++;
+            if (i == n) break;
+            int start = i;
+            while (i < n && !isSeparator(line.charAt(i))) i++;
+            if (count < tokens.length) tokens[count] = line.substring(start, i);
+            count++;
+        }
+        return count;
+    }
+
+    // Blanks, tabs, other control characters and commas separate tokens, so
+    // "AREG,X", "AREG, X" and "AREG X" all give the operands AREG and X. split
+    // and MappedSourceReader both go by this, so --mmap sees the same tokens.
+    static boolean isSeparator(int c)
+    {
+        return c <= ' ' || c == ',';
+    }
+
+    // Statement already split into tokens, either by processLine or by
+    // MappedSourceReader. Only tokens[0..count) are used.
+    void processTokens(String[] tokens, int count) throws IOException
     {
-        line = line.trim();
-        if (line.isEmpty()) return;
-        String[] tokens = line.split("\\s+");
+        if (metrics != null)
+        {
+            metrics.enter(AssemblerMetrics.ANALYSE);
+            metrics.count++;
+        }
+        int emitted = IC.size();
+        int labelIndex = processStatement(tokens, count);
+        if (labelIndex != -1 && IC.size() > emitted) IC.get(emitted).label = labelIndex;
+
+        // the label's address is final once its statement is done (EQU/DS/DC
+        // may have moved it), so that is when a streaming consumer hears of it
+        if (icSink != null && labelIndex != -1)
+        {
+            int address = SYMTAB.get(labelIndex).address;
+            if (address != -1) icSink.defineSymbol(labelIndex, address);
+        }
+        if (labelIndex != -1 && !waitingOn.isEmpty() && SYMTAB.get(labelIndex).address != -1)
+        {
+            resolveWaiting(labelIndex);
+        }
+        if (metrics != null) metrics.enter(AssemblerMetrics.IO);    // back to reading
+    }
+
+    // returns the SYMTAB index of the statement's label, or -1
+    private int processStatement(String[] tokens, int count) throws IOException
+    {
+        if (count == 0) return -1;
 
         String label = null;
         String opcode;
@@ -158,15 +168,22 @@ class Pass1Assembler
 
         //check if label is present
         // --- FIX: tokens[0] is a String, not a boolean. Check if it's NOT in POT or MOT.
-        if (tokens.length > 0 && !POT.containsKey(tokens[0]) && !MOT.containsKey(tokens[0]))
+        int opcodeCode = OpcodeTable.lookup(tokens[0]);
+        if (!OpcodeTable.isOpcode(opcodeCode))
         {
-            label = tokens[0];
+            if (count < 2)
+            {
+                System.err.println("Error: Invalid opcode! " + tokens[0]);
+                return -1;
+            }
+            label = SYMTAB.intern(tokens[0]);
             opcode = tokens[1];
-            if (tokens.length > 2)
+            opcodeCode = OpcodeTable.lookup(opcode);
+            if (count > 2)
             {
                 operand1 = tokens[2].trim().replace(",", "");
             }
-            if (tokens.length > 3)
+            if (count > 3)
             {
                 operand2 = tokens[3].trim().replace(",", "");
             }
@@ -180,6 +197,7 @@ class Pass1Assembler
             else
             {
                 SymbolTableEntry entry = SYMTAB.get(existingLabelIndex);
+                logChange(UNDO_SYMBOL, existingLabelIndex, entry.address, entry.length);
                 entry.address = LC;
             }
         }
@@ -187,11 +205,11 @@ class Pass1Assembler
         {
             // --- FIX: Typo, token[0] -> tokens[0]
             opcode = tokens[0];
-            if (tokens.length > 1)
+            if (count > 1)
             {
                 operand1 = tokens[1].trim().replace(",", "");
             }
-            if (tokens.length > 2)
+            if (count > 2)
             {
                 operand2 = tokens[2].trim().replace(",", "");
             }
@@ -199,100 +217,67 @@ class Pass1Assembler
         }
         if (label != null && shouldInitialiseLabel)
         {
-            SymbolTableEntry symbol = new SymbolTableEntry(label,-1, 1);    //-1 for uninitialised
-            SYMTAB.add(symbol);
-            // Update existingLabelIndex to the newly added symbol
-            existingLabelIndex = SYMTAB.size() - 1;
+            // a label is defined at the current LC; EQU/DS/DC below may overwrite it
+            existingLabelIndex = SYMTAB.add(label, LC, 1);
         }
 
         //label processing done
 
         // Processing opcode
-        if (POT.containsKey(opcode))    // is AD or DL
+        int opcodeKind = OpcodeTable.kind(opcodeCode);
+        if (opcodeCode >= 0 && (opcodeKind == ICRecord.AD || opcodeKind == ICRecord.DL))    // is AD or DL
         {
-            POTEntry entry = POT.get(opcode);
-            switch(entry.mnemonic)
+            switch(opcodeCode)
             {
-                case "START" : 
+                case OpcodeTable.AD_START : 
                 {
                     LC = Integer.parseInt(operand1);    // set LC 
-                    IC.add(String.format("(AD,01) (C,%d)", LC));
+                    emit(new ICRecord(ICRecord.AD, 1, ICRecord.NO_REG, ICRecord.CONSTANT, 0, LC));
                     
                 }
                 break;
 
-                case "END" : 
+                case OpcodeTable.AD_END : 
                 {
                     processLiteralsAtEnd();    
+                    reportUnresolvedEqus();
                     // pooltab_ptr++; // --- LOGICAL ERROR 2: Do not increment pointer on END. This is the final pool.
-                    IC.add(String.format("(AD,02)"));
+                    emit(new ICRecord(ICRecord.AD, 2, ICRecord.NO_REG, ICRecord.NONE, 0, 0));
                 }
                 break;
 
-                case "ORIGIN" :
+                case OpcodeTable.AD_ORIGIN :
                 {
-                    // assuming operand 1 is symbol + int
-                    if (operand1.contains("+")) 
+                    int originFrom = LC;
+                    AddressExpression expr;
+                    try
                     {
-                        // --- FIX: Must escape '+' for split
-                        String[] parts = operand1.split("\\+");
-                    
-                        // --- FIX: Use 'parts' array, not 'operand1'
-                        String symbol = parts[0].trim();
-                        String valStr = parts[1].trim();
-                        int val = Integer.parseInt(valStr);
-                        
-                        int symbolIndex = getSymbolIndex(symbol);
-                        int newLC = val; // Default to just the value
-
-                        // --- FIX: Corrected scope logic ---
-                        if (symbolIndex!=-1) 
-                        {
-                            SymbolTableEntry sym = SYMTAB.get(symbolIndex); // Declare AND initialize inside
-                            if (sym.address!=-1) { // Now it's safe to use sym
-                                newLC += sym.address;
-                            }
-                        }
-                        LC = newLC; // Assign the final value to LC
-                        // --- FIX: IC format should use (S, index) for symbol
-                        IC.add(String.format("(AD,03) (S,%02d)+%d", symbolIndex, val));          
+                        expr = expression(tokens, label == null ? 1 : 2, count);
                     }
-                    else if (operand1.contains("-"))
+                    catch (IllegalArgumentException e)
                     {
-                        String[] parts = operand1.split("-");
-                    
-                        // --- FIX: Use 'parts' array
-                        String symbol = parts[0].trim();
-                        String valStr = parts[1].trim();
-                        int val = Integer.parseInt(valStr);
-                        int symbolIndex = getSymbolIndex(symbol);
-                        
-                        // --- FIX: Corrected scope logic ---
-                        if (symbolIndex!=-1) {
-                             SymbolTableEntry sym = SYMTAB.get(symbolIndex); // Declare AND initialize inside
-                            if (sym.address!=-1) {
-                                LC = sym.address - val; // Only assign LC if sym is valid
-                            }
-                        }
-                        IC.add(String.format("(AD,03) (S,%02d)-%d", symbolIndex, val));
+                        System.err.println("Error: ORIGIN: " + e.getMessage());
+                        break;
                     }
-                    else    //just symbol
+                    int[] operands = operandIndices(expr);
+                    int value = evaluate(expr, operands);
+                    if (value == UNRESOLVED)
                     {
-                        // --- FIX: 'symbol' not defined here, use 'operand1'
-                        int symbolIndex = getSymbolIndex(operand1);
-                        
-                        // --- FIX: Corrected scope logic ---
-                        if (symbolIndex!=-1) {
-                            SymbolTableEntry sym = SYMTAB.get(symbolIndex); // Declare AND initialize inside
-                            if (sym.address != -1) LC = sym.address; // Only assign LC if sym is valid
-                        }
-                        // --- FIX: Corrected parenthesis and format (C -> S)
-                        IC.add(String.format("(AD,03) (S,%02d)", symbolIndex));
-                    }               
+                        System.err.println("Error: ORIGIN " + expr + " uses a symbol with no address yet. LC stays at " + LC + ".");
+                    }
+                    else
+                    {
+                        LC = value;
+                    }
+                    emitAddress(3, expr, operands, value);
+
+                    // code from here on may be placed over earlier pools, so
+                    // their literals must not be handed out again
+                    if (LC < originFrom) sharedFloor = LITTAB.size();
                 }
                 break;
 
-                case "EQU" : 
+                case OpcodeTable.AD_EQU : 
                 {
                     // --- FIX: Add a check for a missing label ---
                     if (existingLabelIndex == -1) {
@@ -300,60 +285,70 @@ class Pass1Assembler
                         break; // Stop processing this line
                     }
                     
-                    // This assumes a label was present on the EQU line
+                    // the label is not defined by its own EQU (A EQU A+1 is
+                    // circular), nor by one whose operand is in error
                     SymbolTableEntry labelEntry = SYMTAB.get(existingLabelIndex);
-
-                    if (operand1.contains("+"))
+                    labelEntry.address = -1;
+                    AddressExpression expr;
+                    try
                     {
-                        // --- FIX: Must escape '+'
-                        String[] parts = operand1.trim().split("\\+");
-                        int operand1Index = getSymbolIndex(parts[0]);
-                        SymbolTableEntry opearand1Entry = SYMTAB.get(operand1Index);
-                        int val = Integer.parseInt(parts[1]);
-                        labelEntry.address = opearand1Entry.address + val;
-                        IC.add(String.format("(AD,04) (S,%02d)+%d", operand1Index, val));
+                        expr = expression(tokens, 2, count);
+                    }
+                    catch (IllegalArgumentException e)
+                    {
+                        System.err.println("Error: EQU: " + e.getMessage());
+                        break;
                     }
-                    else if (operand1.contains("-"))
+                    int[] operands = operandIndices(expr);
+                    int value = evaluate(expr, operands);
+                    ICRecord record = emitAddress(4, expr, operands, value);
+                    if (value == UNRESOLVED)
                     {
-                        String[] parts = operand1.trim().split("-");
-                        int operand1Index = getSymbolIndex(parts[0]);
-                        SymbolTableEntry opearand1Entry = SYMTAB.get(operand1Index);
-                        int val = Integer.parseInt(parts[1]);
-                        labelEntry.address = opearand1Entry.address - val;
-                        IC.add(String.format("(AD,04) (S,%02d)-%d", operand1Index, val));
+                        // forward reference: resolved as soon as the symbols it uses are defined
+                        PendingEqu pending = new PendingEqu(pendingEqus.size(), existingLabelIndex, expr, operands);
+                        if (record.kind == ICRecord.NONE && icSink == null) pending.record = record;
+                        pendingEqus.add(pending);
+                        waitFor(pending);
                     }
                     else
                     {
-                        // --- HERE IS THE FIX ---
-                        // Try to parse operand1 as a plain number first.
-                        try {
-                            int val = Integer.parseInt(operand1);
-                            
-                            // It's a number! Assign it as a constant.
-                            labelEntry.address = val;
-                            IC.add(String.format("(AD,04) (C,%d)", val));
-
-                        } catch (NumberFormatException e) {
-                            // It's not a number, so treat it as a symbol.
-                            // This was your original 'else' logic.
-                            int operand1Index = getSymbolIndex(operand1.trim());
-                            SymbolTableEntry opearand1Entry = SYMTAB.get(operand1Index);
-                            labelEntry.address = opearand1Entry.address;
-                            IC.add(String.format("(AD,04) (S,%02d)", operand1Index));
-                        }
-                    }                     
+                        labelEntry.address = value;
+                    }
                 }
                 break;
 
-                case "LTORG" : 
+                case OpcodeTable.AD_LTORG : 
                 {
+                    emit(new ICRecord(ICRecord.AD, 5, ICRecord.NO_REG, ICRecord.NONE, 0, 0));
                     processLiteralsAtLTORG();
                     pooltab_ptr++;
-                    IC.add(String.format("(AD,05)"));
                 }
                 break;
 
-                case "DS" : 
+                case OpcodeTable.AD_EXTRN :
+                {
+                    // symbols defined in another module; no IC, pass 2 sees them
+                    // once the link step has filled in their addresses
+                    for (String name : operandNames(tokens, label == null ? 1 : 2, count))
+                    {
+                        int symIndex = getSymbolIndex(name);
+                        if (symIndex == -1)
+                        {
+                            symIndex = SYMTAB.add(name, -1, 1);
+                        }
+                        EXTRNS.add(symIndex);
+                    }
+                }
+                break;
+
+                case OpcodeTable.AD_ENTRY :
+                {
+                    // symbols other modules may refer to; exported after END
+                    ENTRIES.addAll(operandNames(tokens, label == null ? 1 : 2, count));
+                }
+                break;
+
+                case OpcodeTable.DL_DS : 
                 {
                     // Assumes a label was present
                     SymbolTableEntry symbol = SYMTAB.get(existingLabelIndex);
@@ -364,11 +359,11 @@ class Pass1Assembler
                     symbol.address = LC;
                     LC += len;
 
-                    IC.add(String.format("(DL,01) (C,%d)", len)); // DS length is a constant
+                    emit(new ICRecord(ICRecord.DL, 1, ICRecord.NO_REG, ICRecord.CONSTANT, 0, len)); // DS length is a constant
                 }
                 break;
 
-                case "DC" : 
+                case OpcodeTable.DL_DC : 
                 {
                     // Assumes a label was present
                     SymbolTableEntry symbol = SYMTAB.get(existingLabelIndex);
@@ -378,7 +373,7 @@ class Pass1Assembler
                     symbol.length = 1;
                     LC += 1;
 
-                    IC.add(String.format("(DL,02) (C,%d)", val)); // DC value is a constant
+                    emit(new ICRecord(ICRecord.DL, 2, ICRecord.NO_REG, ICRecord.CONSTANT, 0, val)); // DC value is a constant
 
                 }
                 break;
@@ -389,28 +384,26 @@ class Pass1Assembler
             }
 
         }
-        else if (MOT.containsKey(opcode))
+        else if (opcodeCode >= 0 && opcodeKind == ICRecord.IS)
         {
-            MOTEntry motEntry = MOT.get(opcode);
-            StringBuilder icEntry = new StringBuilder();
-            
-            // --- FIX: Field names are opcodetype and opcodeval
-            icEntry.append(String.format("(%s, %s)", motEntry.opcodetype, motEntry.opcodeval));
+            ICRecord icEntry = new ICRecord(ICRecord.IS, OpcodeTable.value(opcodeCode),
+                    ICRecord.NO_REG, ICRecord.NONE, 0, 0);
 
             // Process operand1
             if (operand1 != null) {
-                if (REG.containsKey(operand1)) { // It's a register
-                    icEntry.append(String.format(" (%s)", REG.get(operand1)));
-                } else if (CC.containsKey(operand1)) { // It's a condition code (for BC)
-                    icEntry.append(String.format(" (%s)", CC.get(operand1)));
+                int operandCode = OpcodeTable.lookup(operand1);
+                int operandKind = OpcodeTable.kind(operandCode);
+                if (operandCode >= 0 && (operandKind == OpcodeTable.REG || operandKind == OpcodeTable.CC)) {
+                    // It's a register, or a condition code (for BC)
+                    icEntry.reg = OpcodeTable.value(operandCode);
                 } else {
                     // It's a symbol. Add to SYMTAB if not present (forward reference).
                     int symIndex = getSymbolIndex(operand1);
                     if (symIndex == -1) {
-                        SYMTAB.add(new SymbolTableEntry(operand1, -1, 1)); // Address will be resolved in Pass 2
-                        symIndex = SYMTAB.size() - 1; // Use 0-based index
+                        symIndex = SYMTAB.add(operand1, -1, 1); // Address will be resolved in Pass 2
                     } 
-                    icEntry.append(String.format(" (S, %02d)", symIndex));
+                    icEntry.kind = ICRecord.SYMBOL;
+                    icEntry.index = symIndex;
                 }
             }
 
@@ -423,32 +416,40 @@ class Pass1Assembler
                         // Add to LITTAB
                         LITTAB.add(new LiteralTableEntry(literalValue, 0)); // Address resolved in LTORG/END
                         litIndex = LITTAB.size() - 1; // Use 0-based index
+                        poolIndex.put(literalValue, litIndex);
                         // Update current pool's literal count
                         POOLTAB.get(pooltab_ptr).numOfLiterals++;
                     }
-                    icEntry.append(String.format(" (L, %02d)", litIndex));
+                    icEntry.kind = ICRecord.LITERAL;
+                    icEntry.index = litIndex;
                 } else { // It's a symbol
                     int symIndex = getSymbolIndex(operand2);
                     if (symIndex == -1) {
                         // Add to SYMTAB (forward reference)
-                        SYMTAB.add(new SymbolTableEntry(operand2, -1, 1)); // Address will be resolved later
-                        symIndex = SYMTAB.size() - 1; // Use 0-based index
+                        symIndex = SYMTAB.add(operand2, -1, 1); // Address will be resolved later
                     }
-                    icEntry.append(String.format(" (S, %02d)", symIndex));
+                    icEntry.kind = ICRecord.SYMBOL;
+                    icEntry.index = symIndex;
                 }
             }
             // --- FIX: List name is IC
-            IC.add(icEntry.toString());
-            LC += motEntry.length; // Increment LC by instruction length
+            emit(icEntry);
+            LC += OpcodeTable.IS_LENGTH; // Increment LC by instruction length
         }
         else
         {
             System.err.println("Error: Invalid opcode! " + opcode);
         }
-        
+        return existingLabelIndex;
     }
 
-    void processLiteralsAtLTORG()
+    // every mnemonic, register and condition code the front end should recognise
+    Collection<String> keywords()
+    {
+        return OpcodeTable.keywords();
+    }
+
+    void processLiteralsAtLTORG() throws IOException
     {
         PoolTableEntry poolEntry = POOLTAB.get(pooltab_ptr);
         
@@ -459,15 +460,40 @@ class Pass1Assembler
             // --- FIX: Address 0 means unassigned (based on LITTAB.add)
             if (litEntry.address == 0)
             {
+                logChange(UNDO_LITERAL, i, litEntry.address, 0);
                 litEntry.address = LC;
+                if (shareLiterals) placedLiterals.put(litEntry.literal, i);
+                if (icSink != null) icSink.defineLiteral(i, LC);
+                emitLiteral(i, litEntry);
                 LC++;
             }
         }
         // Add new entry for the next pool
         POOLTAB.add(new PoolTableEntry(LITTAB.size(), 0));
+        poolIndex.clear();
+        for (int i : sharedInPool) logChange(UNDO_SHARED, i, 0, 0);
+        sharedInPool.clear();
     }
 
-    void processLiteralsAtEnd()
+    // the pool's words go into the IC as DCs, so pass 2 keeps its LC in step
+    // with pass 1 and the machine code holds the literal values
+    private void emitLiteral(int litIndex, LiteralTableEntry litEntry) throws IOException
+    {
+        int value = 0;
+        try
+        {
+            value = Integer.parseInt(litEntry.literal.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("Error: literal ='" + litEntry.literal + "' is not a number. Using 0.");
+        }
+        ICRecord word = new ICRecord(ICRecord.DL, 2, ICRecord.NO_REG, ICRecord.CONSTANT, 0, value);
+        word.literal = litIndex;
+        emit(word);
+    }
+
+    void processLiteralsAtEnd() throws IOException
     {
         PoolTableEntry poolEntry = POOLTAB.get(pooltab_ptr);
         
@@ -478,54 +504,573 @@ class Pass1Assembler
             // --- FIX: Address 0 means unassigned
             if (litEntry.address == 0)
             {
+                logChange(UNDO_LITERAL, i, litEntry.address, 0);
                 litEntry.address = LC;
+                if (shareLiterals) placedLiterals.put(litEntry.literal, i);
+                if (icSink != null) icSink.defineLiteral(i, LC);
+                emitLiteral(i, litEntry);
                 LC++;
             }
         }
     }
 
-    // --- FIX: Corrected List access ---
     int getSymbolIndex(String symbolname)
     {
-        for (int i=0; i < SYMTAB.size(); i++)
+        return SYMTAB.indexOf(symbolname);
+    }
+
+    // --- ORIGIN and EQU operands ---
+    // An operand is parsed once into an AddressExpression and its symbols are
+    // looked up once per statement; an EQU whose symbols are not all defined
+    // yet waits on one of them and is resolved the moment the last one is, so
+    // a chain of EQUs written in any order is settled in one pass over the
+    // source (each definition resolving whatever was waiting for it, in
+    // dependency order). Whatever is still waiting at END is circular or uses
+    // an undefined symbol.
+
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    private static class PendingEqu
+    {
+        final int position;    // in pendingEqus
+        final int label;       // SYMTAB index of the EQU's label
+        final AddressExpression expression;
+        final int[] operands;  // SYMTAB index of each symbol of expression
+        boolean resolved;
+        // the EQU's buffered IC record if it went out without an operand, so
+        // it can be given (C,value) once the value is known; null otherwise
+        ICRecord record;
+
+        PendingEqu(int position, int label, AddressExpression expression, int[] operands)
         {
-            SymbolTableEntry entry = SYMTAB.get(i);
-            // --- FIX: Use .equals() for String comparison
-            if (entry.symbol.equals(symbolname))
+            this.position = position;
+            this.label = label;
+            this.expression = expression;
+            this.operands = operands;
+        }
+    }
+
+    // The names in an EXTRN/ENTRY operand list, tokens[from .. count). Names
+    // may be separated by commas, blanks or both, so "A,B, C" is three names.
+    private static List<String> operandNames(String[] tokens, int from, int count)
+    {
+        List<String> names = new ArrayList<>();
+        for (int i = from; i < count; i++)
+        {
+            for (String name : tokens[i].split(","))
             {
-                return i;
+                if (!name.isEmpty()) names.add(name);
             }
         }
-        return -1;
+        return names;
+    }
+
+    // tokens[from .. count) is the operand; usually a single token, but
+    // spaces around the operators are allowed
+    private AddressExpression expression(String[] tokens, int from, int count)
+    {
+        String text = from >= count ? "" : from == count - 1 ? tokens[from]
+                : String.join(" ", Arrays.copyOfRange(tokens, from, count));
+        AddressExpression expr = expressions.get(text);
+        if (expr == null)
+        {
+            expr = AddressExpression.parse(text);
+            expressions.put(text, expr);
+        }
+        return expr;
+    }
+
+    // SYMTAB index of each symbol of expr; unknown ones are entered as forward references
+    private int[] operandIndices(AddressExpression expr)
+    {
+        int[] operands = new int[expr.symbols.length];
+        for (int i = 0; i < operands.length; i++)
+        {
+            int symIndex = getSymbolIndex(expr.symbols[i]);
+            if (symIndex == -1) symIndex = SYMTAB.add(expr.symbols[i], -1, 1);
+            operands[i] = symIndex;
+        }
+        return operands;
+    }
+
+    // value of expr, or UNRESOLVED while one of its symbols has no address
+    private int evaluate(AddressExpression expr, int[] operands)
+    {
+        int value = expr.constant;
+        for (int i = 0; i < operands.length; i++)
+        {
+            int address = SYMTAB.get(operands[i]).address;
+            if (address == -1) return UNRESOLVED;
+            value += expr.coefficients[i] * address;
+        }
+        return value;
     }
 
-    // --- FIX: Corrected List access ---
+    // SYM+n stays (S,nn)+n as before, so pass 2 can still resolve it itself;
+    // anything else is folded to (C,value), or left without an operand if
+    // it cannot be computed yet. A buffered EQU record left without one gets
+    // its (C,value) in resolveWaiting; a streamed one has already been
+    // written, so with --stream such an EQU stays bare in the IC and only
+    // SYMTAB has its value.
+    private ICRecord emitAddress(int opcode, AddressExpression expr, int[] operands, int value) throws IOException
+    {
+        ICRecord record;
+        if (expr.isSymbolPlusConstant())
+        {
+            record = new ICRecord(ICRecord.AD, opcode, ICRecord.NO_REG, ICRecord.SYMBOL, operands[0], expr.constant);
+        }
+        else if (value != UNRESOLVED)
+        {
+            record = new ICRecord(ICRecord.AD, opcode, ICRecord.NO_REG, ICRecord.CONSTANT, 0, value);
+        }
+        else
+        {
+            record = new ICRecord(ICRecord.AD, opcode, ICRecord.NO_REG, ICRecord.NONE, 0, 0);
+        }
+        if (addressOperands != null && operands.length > 0)
+        {
+            addressOperands.put(record, new PeepholeOptimizer.AddressOperand(expr, operands));
+        }
+        emit(record);
+        return record;
+    }
+
+    // park pending on the first of its symbols that is still undefined
+    private void waitFor(PendingEqu pending)
+    {
+        for (int symIndex : pending.operands)
+        {
+            if (SYMTAB.get(symIndex).address == -1)
+            {
+                waitingOn.computeIfAbsent(symIndex, k -> new ArrayList<>()).add(pending);
+                return;
+            }
+        }
+    }
+
+    // symIndex just got its address: settle every EQU that was waiting only
+    // for it, then everything waiting for those, and so on
+    private void resolveWaiting(int symIndex) throws IOException
+    {
+        ArrayDeque<Integer> defined = new ArrayDeque<>();
+        defined.push(symIndex);
+        while (!defined.isEmpty())
+        {
+            List<PendingEqu> waiting = waitingOn.remove(defined.pop());
+            if (waiting == null) continue;
+            for (PendingEqu pending : waiting)
+            {
+                int value = evaluate(pending.expression, pending.operands);
+                if (value == UNRESOLVED)
+                {
+                    waitFor(pending);
+                    continue;
+                }
+                SymbolTableEntry entry = SYMTAB.get(pending.label);
+                logChange(UNDO_SYMBOL, pending.label, entry.address, entry.length);
+                logChange(UNDO_EQU, pending.position, 0, 0);
+                entry.address = value;
+                pending.resolved = true;
+                if (pending.record != null)
+                {
+                    pending.record.kind = ICRecord.CONSTANT;
+                    pending.record.constant = value;
+                }
+                if (icSink != null) icSink.defineSymbol(pending.label, value);
+                defined.push(pending.label);
+            }
+        }
+    }
+
+    private void reportUnresolvedEqus()
+    {
+        for (PendingEqu pending : pendingEqus)
+        {
+            if (pending.resolved) continue;
+            StringBuilder missing = new StringBuilder();
+            for (int symIndex : pending.operands)
+            {
+                if (SYMTAB.get(symIndex).address == -1) missing.append(' ').append(SYMTAB.get(symIndex).symbol);
+            }
+            System.err.println("Error: " + SYMTAB.get(pending.label).symbol + " EQU " + pending.expression
+                    + " cannot be resolved; undefined or circular:" + missing);
+        }
+    }
+
+    // --- LOGICAL ERROR 3: Must search *only* the current pool.
+    // Searching the whole LITTAB breaks literal re-use across pools.
+    // The current pool is hashed, so this is one lookup however big the pool.
+    // With shareLiterals an earlier pool's copy is used if it is still safe.
     int getLiteralIndex(String literalname)
     {
-        // --- LOGICAL ERROR 3: Must search *only* the current pool.
-        // Searching the whole LITTAB breaks literal re-use across pools.
-        PoolTableEntry currentPool = POOLTAB.get(pooltab_ptr);
-        for (int i = currentPool.startIndex; i < currentPool.startIndex + currentPool.numOfLiterals; i++)
+        Integer i = poolIndex.get(literalname);
+        if (i != null)
         {
-            LiteralTableEntry entry = LITTAB.get(i);
-            // --- LOGICAL ERROR 4: Typo, was checking entry.symbol
-            if (entry.literal.equals(literalname))
+            literalsReused++;
+            return i;
+        }
+        if (shareLiterals)
+        {
+            i = placedLiterals.get(literalname);
+            if (i != null && i >= sharedFloor)
             {
+                literalsShared++;
+                if (sharedInPool.add(i))
+                {
+                    logChange(UNDO_SHARED, i, 1, 0);
+                    wordsSaved++;
+                }
                 return i;
             }
         }
         return -1; // Not found in current pool
     }
 
+    // Reuse a literal already placed by an earlier LTORG instead of putting
+    // another copy in the current pool. Addresses are absolute, so an earlier
+    // copy is reachable from anywhere; it stops being shared once an ORIGIN
+    // moves the LC back, since later code may then overwrite it.
+    void shareLiteralsAcrossPools()
+    {
+        shareLiterals = true;
+    }
+
+    // must be called before the first statement, so the ORIGIN/EQU operands
+    // are kept; the IC has to be buffered, not streamed
+    void keepAddressOperands()
+    {
+        addressOperands = new IdentityHashMap<>();
+    }
+
+    // runs the peephole optimizer over the buffered IC and prints what it saved
+    void optimizeIntermediateCode()
+    {
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(IC, SYMTAB, LITTAB, addressOperands);
+        optimizer.run();
+        System.out.println(optimizer.summary());
+    }
+
+    void displayLiteralSavings()
+    {
+        System.out.println("\n--------LITERAL POOLS-----------");
+        System.out.println("Literal words placed:\t" + LITTAB.size());
+        System.out.println("Reused within a pool:\t" + literalsReused);
+        System.out.println("Shared across pools:\t" + literalsShared + (shareLiterals ? "" : " (sharing off)"));
+        // a pool places each of its literals once anyway, so only the
+        // literals it did not place because an earlier pool had them save words
+        System.out.println("Words saved:\t\t" + wordsSaved);
+        System.out.println("--------------------------------");
+    }
+
+    // IC lines only ever name symbols and literals by table index, so a line is
+    // final as soon as it is built: forward references get their address from
+    // SYMTAB in pass 2. In streaming mode each line goes straight to the file
+    // and the IC list stays empty.
+    void emit(ICRecord record) throws IOException
+    {
+        if (metrics != null)
+        {
+            metrics.enter(AssemblerMetrics.EMIT);
+            metrics.increment("icRecords");
+        }
+        if (icSink != null)
+        {
+            icSink.write(record);
+        }
+        else
+        {
+            IC.add(record);
+        }
+        if (metrics != null) metrics.enter(AssemblerMetrics.ANALYSE);
+    }
+
+    // starts timing; everything up to the first statement counts as I/O
+    void collectMetrics(AssemblerMetrics metrics)
+    {
+        this.metrics = metrics;
+        metrics.enter(AssemblerMetrics.IO);
+    }
+
+    // stops timing and records the table sizes
+    void finishMetrics()
+    {
+        metrics.enter(AssemblerMetrics.NONE);
+        metrics.table("symtab", SYMTAB.size());
+        metrics.table("littab", LITTAB.size());
+        metrics.table("pooltab", POOLTAB.size());
+        metrics.table("ic", IC.size());
+    }
+
+    void setQuiet(boolean quiet)
+    {
+        this.quiet = quiet;
+    }
+
+    void openIntermediateCodeStream(ICSink sink)
+    {
+        icSink = sink;
+    }
+
+    void closeIntermediateCodeStream() throws IOException
+    {
+        icSink.close();
+        icSink = null;
+    }
+
+    // --- Linking ---
+    // ENTRY symbols go into a namespace shared by all modules of a program,
+    // EXTRN symbols are looked up there once every module has been through
+    // pass 1. Both return the number of errors reported.
+
+    int exportEntries(ConcurrentMap<String,Integer> namespace, String module)
+    {
+        int errors = 0;
+        for (String name : ENTRIES)
+        {
+            int symIndex = getSymbolIndex(name);
+            if (symIndex == -1 || SYMTAB.get(symIndex).address == -1)
+            {
+                System.err.println("Error: " + module + ": ENTRY " + name + " is not defined.");
+                errors++;
+                continue;
+            }
+            Integer previous = namespace.putIfAbsent(name, SYMTAB.get(symIndex).address);
+            if (previous != null)
+            {
+                System.err.println("Error: " + module + ": ENTRY " + name + " is already defined by another module.");
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    int importExterns(Map<String,Integer> namespace, String module)
+    {
+        int errors = 0;
+        for (int symIndex : EXTRNS)
+        {
+            SymbolTableEntry entry = SYMTAB.get(symIndex);
+            Integer address = namespace.get(entry.symbol);
+            if (address == null)
+            {
+                System.err.println("Error: " + module + ": EXTRN " + entry.symbol + " is not an ENTRY of any module.");
+                errors++;
+            }
+            else
+            {
+                entry.address = address;
+            }
+        }
+        return errors;
+    }
+
+    // --- Incremental re-assembly ---
+    // Pass 1 can be wound back to the start of any earlier statement. Table
+    // entries appended since then are dropped by truncating; the few fields
+    // changed in place (a forward-referenced symbol getting its address, a
+    // literal being placed, a waiting EQU being settled, a pool taking or
+    // dropping a shared literal) are put back from an undo log.
+
+    static final int STATE_SIZE = 15;
+    private static final int UNDO_SYMBOL = 0;
+    private static final int UNDO_LITERAL = 1;
+    private static final int UNDO_EQU = 2;
+    private static final int UNDO_SHARED = 3;    // address 1: added to sharedInPool, 0: cleared from it
+
+    private int[] undo;    // null unless keepUndoLog() was called
+    private int undoSize;
+
+    void keepUndoLog()
+    {
+        undo = new int[1024];
+        undoSize = 0;
+    }
+
+    private void logChange(int type, int index, int address, int length)
+    {
+        if (undo == null) return;
+        if (undoSize + 4 > undo.length) undo = Arrays.copyOf(undo, undo.length * 2);
+        undo[undoSize++] = type;
+        undo[undoSize++] = index;
+        undo[undoSize++] = address;
+        undo[undoSize++] = length;
+    }
+
+    // everything rollback() needs to come back to this point, in
+    // state[offset .. offset + STATE_SIZE)
+    void saveState(int[] state, int offset)
+    {
+        state[offset] = SYMTAB.size();
+        state[offset + 1] = LITTAB.size();
+        state[offset + 2] = POOLTAB.size();
+        state[offset + 3] = POOLTAB.get(POOLTAB.size() - 1).numOfLiterals;
+        state[offset + 4] = LC;
+        state[offset + 5] = pooltab_ptr;
+        state[offset + 6] = IC.size();
+        state[offset + 7] = undoSize;
+        state[offset + 8] = ENTRIES.size();
+        state[offset + 9] = EXTRNS.size();
+        state[offset + 10] = sharedFloor;
+        state[offset + 11] = pendingEqus.size();
+        state[offset + 12] = literalsReused;
+        state[offset + 13] = literalsShared;
+        state[offset + 14] = wordsSaved;
+    }
+
+    void rollback(int[] state, int offset)
+    {
+        while (undoSize > state[offset + 7])
+        {
+            undoSize -= 4;
+            int index = undo[undoSize + 1];
+            if (undo[undoSize] == UNDO_SYMBOL)
+            {
+                SymbolTableEntry entry = SYMTAB.get(index);
+                entry.address = undo[undoSize + 2];
+                entry.length = undo[undoSize + 3];
+            }
+            else if (undo[undoSize] == UNDO_SHARED)
+            {
+                if (undo[undoSize + 2] == 1) sharedInPool.remove(index);
+                else sharedInPool.add(index);
+            }
+            else if (undo[undoSize] == UNDO_EQU)
+            {
+                PendingEqu pending = pendingEqus.get(index);
+                pending.resolved = false;
+                if (pending.record != null)
+                {
+                    pending.record.kind = ICRecord.NONE;
+                    pending.record.constant = 0;
+                }
+            }
+            else
+            {
+                LITTAB.get(index).address = undo[undoSize + 2];
+            }
+        }
+        SYMTAB.truncate(state[offset]);
+        LITTAB.subList(state[offset + 1], LITTAB.size()).clear();
+        POOLTAB.subList(state[offset + 2], POOLTAB.size()).clear();
+        POOLTAB.get(POOLTAB.size() - 1).numOfLiterals = state[offset + 3];
+        LC = state[offset + 4];
+        pooltab_ptr = state[offset + 5];
+        IC.subList(state[offset + 6], IC.size()).clear();
+        ENTRIES.subList(state[offset + 8], ENTRIES.size()).clear();
+        EXTRNS.subList(state[offset + 9], EXTRNS.size()).clear();
+        sharedFloor = state[offset + 10];
+        pendingEqus.subList(state[offset + 11], pendingEqus.size()).clear();
+        literalsReused = state[offset + 12];
+        literalsShared = state[offset + 13];
+        wordsSaved = state[offset + 14];
+
+        // and which EQUs wait for which symbol from what is left of pendingEqus
+        waitingOn.clear();
+        for (PendingEqu pending : pendingEqus)
+        {
+            if (!pending.resolved) waitFor(pending);
+        }
+
+        // the literal indexes are rebuilt from what is left of LITTAB
+        poolIndex.clear();
+        PoolTableEntry pool = POOLTAB.get(POOLTAB.size() - 1);
+        for (int i = pool.startIndex; i < pool.startIndex + pool.numOfLiterals; i++)
+        {
+            poolIndex.put(LITTAB.get(i).literal, i);
+        }
+        placedLiterals.clear();
+        if (shareLiterals)
+        {
+            for (int i = 0; i < LITTAB.size(); i++)
+            {
+                if (LITTAB.get(i).address != 0) placedLiterals.put(LITTAB.get(i).literal, i);
+            }
+        }
+    }
+
+    // read access for an in-process pass 2
+    int icSize()
+    {
+        return IC.size();
+    }
+
+    ICRecord icRecord(int i)
+    {
+        return IC.get(i);
+    }
+
+    int symbolCount()
+    {
+        return SYMTAB.size();
+    }
+
+    int symbolAddress(int i)
+    {
+        return SYMTAB.get(i).address;
+    }
+
+    int literalCount()
+    {
+        return LITTAB.size();
+    }
+
+    int literalAddress(int i)
+    {
+        return LITTAB.get(i).address;
+    }
+
     // --- FIX: Must handle potential IOException ---
     void writeIntermediateCodeToFile() throws IOException
     {
         BufferedWriter bw = new BufferedWriter(new FileWriter("IntermediateCode.txt"));
-        for (String line : IC)
+        for (ICRecord record : IC)
         {
+            String line = record.toString();
             bw.write(line);
             bw.write("\n");
-            System.out.println(line);
+            if (!quiet) System.out.println(line);
+        }
+        bw.close();
+    }
+
+    void writeBinaryIntermediateCode() throws IOException
+    {
+        ICSink sink = new BinaryICSink("IntermediateCode.bin");
+        for (ICRecord record : IC)
+        {
+            sink.write(record);
+        }
+        sink.close();
+    }
+
+    // SYMTAB and LITTAB in the "index name address" form Pass2Assembler loads
+    void writeTablesToFile() throws IOException
+    {
+        BufferedWriter bw = new BufferedWriter(new FileWriter("symtab.txt"));
+        for (int i = 0; i < SYMTAB.size(); i++)
+        {
+            SymbolTableEntry entry = SYMTAB.get(i);
+            bw.write(i + " " + entry.symbol + " " + entry.address + "\n");
+        }
+        bw.close();
+
+        bw = new BufferedWriter(new FileWriter("littab.txt"));
+        for (int i = 0; i < LITTAB.size(); i++)
+        {
+            LiteralTableEntry entry = LITTAB.get(i);
+            bw.write(i + " " + entry.literal + " " + entry.address + "\n");
+        }
+        bw.close();
+    }
+
+    // POOLTAB as "index startIndex numOfLiterals"
+    void writePoolTableToFile() throws IOException
+    {
+        BufferedWriter bw = new BufferedWriter(new FileWriter("pooltab.txt"));
+        for (int i = 0; i < POOLTAB.size(); i++)
+        {
+            PoolTableEntry entry = POOLTAB.get(i);
+            bw.write(i + " " + entry.startIndex + " " + entry.numOfLiterals + "\n");
         }
         bw.close();
     }
@@ -568,19 +1113,105 @@ class Pass1Assembler
     // --- FIX: Must handle potential IOException ---
     public static void main(String args[]) throws IOException
     {
+        // --stream writes IC while reading instead of buffering the whole program
+        // --binary writes IntermediateCode.bin for pass 2 (text is then only a debug export)
+        // --mmap reads input.asm through MappedSourceReader instead of BufferedReader
+        // --share-literals lets a pool reuse literals already placed by an earlier LTORG
+        // --echo prints each line as it is read, the IC and the tables; they
+        //   are off by default since printing them dominates the run time
+        //   (--quiet, which used to turn them off, is still accepted)
+        // --metrics prints a JSON summary of where the time went and registers it with JMX
+        // --optimize runs PeepholeOptimizer over the IC before it is written (not with --stream)
+        boolean stream = false;
+        boolean binary = false;
+        boolean mmap = false;
+        boolean shareLiterals = false;
+        boolean quiet = true;
+        boolean collectMetrics = false;
+        boolean optimize = false;
+        for (String arg : args)
+        {
+            if (arg.equals("--stream")) stream = true;
+            else if (arg.equals("--binary")) binary = true;
+            else if (arg.equals("--mmap")) mmap = true;
+            else if (arg.equals("--share-literals")) shareLiterals = true;
+            else if (arg.equals("--echo")) quiet = false;
+            else if (arg.equals("--quiet")) quiet = true;
+            else if (arg.equals("--metrics")) collectMetrics = true;
+            else if (arg.equals("--optimize")) optimize = true;
+            else if (arg.startsWith("--"))
+            {
+                System.err.println("Unknown option: " + arg);
+                return;
+            }
+        }
+
         Pass1Assembler assembler = new Pass1Assembler();
-        BufferedReader br = new BufferedReader(new FileReader("input.asm"));
-        String line;
-        while((line = br.readLine())!=null)
+        if (shareLiterals) assembler.shareLiteralsAcrossPools();
+        assembler.setQuiet(quiet);
+        if (optimize && stream)
+        {
+            System.err.println("Error: --optimize needs the whole IC in memory; ignored with --stream.");
+            optimize = false;
+        }
+        if (optimize) assembler.keepAddressOperands();
+        AssemblerMetrics metrics = null;
+        if (collectMetrics)
+        {
+            metrics = new AssemblerMetrics("statements", AssemblerMetrics.PASS1_PHASES);
+            metrics.register("Pass1");
+            assembler.collectMetrics(metrics);
+        }
+        if (stream)
+        {
+            assembler.openIntermediateCodeStream(binary ? new BinaryICSink("IntermediateCode.bin")
+                                                        : new TextICSink("IntermediateCode.txt"));
+        }
+
+        if (mmap)
+        {
+            MappedSourceReader reader = new MappedSourceReader("input.asm", assembler.keywords());
+            reader.collectMetrics(metrics);
+            String[] tokens = new String[8];
+            while (reader.nextLine())
+            {
+                if (!stream && !quiet) System.out.println("Processing line : " + reader.line());
+                tokens = reader.tokens(tokens);
+                assembler.processTokens(tokens, reader.count());
+            }
+            reader.close();
+        }
+        else
         {
-            System.out.println("Processing line : " + line);
-            assembler.processLine(line);
+            BufferedReader br = new BufferedReader(new FileReader("input.asm"));
+            String line;
+            while((line = br.readLine())!=null)
+            {
+                if (!stream && !quiet) System.out.println("Processing line : " + line);
+                assembler.processLine(line);
+            }
+            br.close(); // Close the reader
         }
-        br.close(); // Close the reader
 
-        assembler.writeIntermediateCodeToFile();
-        assembler.displaySymbolTable();
-        assembler.displayLiteralTable();
-        assembler.displayPoolTable();
+        if (stream) assembler.closeIntermediateCodeStream();
+        else
+        {
+            if (optimize) assembler.optimizeIntermediateCode();
+            assembler.writeIntermediateCodeToFile();
+            if (binary) assembler.writeBinaryIntermediateCode();
+        }
+        assembler.writeTablesToFile();
+        if (!quiet)
+        {
+            assembler.displaySymbolTable();
+            assembler.displayLiteralTable();
+            assembler.displayPoolTable();
+            assembler.displayLiteralSavings();
+        }
+        if (metrics != null)
+        {
+            assembler.finishMetrics();
+            System.out.println(metrics.getJsonSummary());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Output-equivalence checks for pass 1. A program has to come out of pass 1
+// the same (IC, SYMTAB, LITTAB) whether it is read line by line or through
+// MappedSourceReader (--mmap), and none of a statement's operands may get
+// lost on the way.
+//
+//   javac -encoding UTF-8 *.java && java Pass1AssemblerTest
+//
+// Prints each failed check and exits with status 1 if there was any.
+class Pass1AssemblerTest
+{
+    static int checks = 0;
+    static int failures = 0;
+    static Path dir;
+
+    public static void main(String[] args) throws IOException
+    {
+        dir = Files.createTempDirectory("pass1-test");
+        try
+        {
+            expressionOperands();
+            longNameLists();
+            commaOperands();
+            forwardEquOperand();
+            rerunLiteralSavings();
+        }
+        finally
+        {
+            File[] files = dir.toFile().listFiles();
+            if (files != null) for (File f : files) f.delete();
+            dir.toFile().delete();
+        }
+        System.out.println((checks - failures) + " of " + checks + " checks passed");
+        if (failures > 0) System.exit(1);
+    }
+
+    static void expressionOperands() throws IOException
+    {
+        String source = "START 100\n"
+                + "A DS 1\n"
+                + "X EQU A + 1\n"
+                + "Y EQU X - 1 + 2\n"
+                + "MOVER AREG, X\n"
+                + "MOVEM BREG, Y\n"
+                + "END\n";
+        Pass1Assembler lines = byLine(source);
+        Pass1Assembler mapped = mapped(source);
+        check("EQU with an expression operand, line by line", address(lines, "X") == address(lines, "A") + 1);
+        check("EQU with an expression operand, --mmap", address(mapped, "X") == address(mapped, "A") + 1);
+        check("--mmap matches line by line for expression operands", describe(mapped).equals(describe(lines)));
+    }
+
+    static void longNameLists() throws IOException
+    {
+        String source = "START 100\n"
+                + "EXTRN E1, E2, E3, E4, E5, E6, E7, E8, E9\n"
+                + "ENTRY N1,N2,N3 N4, N5 ,N6, N7, N8, N9\n"
+                + "N1 DS 1\nN2 DS 1\nN3 DS 1\nN4 DS 1\nN5 DS 1\nN6 DS 1\nN7 DS 1\nN8 DS 1\nN9 DS 1\n"
+                + "END\n";
+        ConcurrentHashMap<String,Integer> externs = new ConcurrentHashMap<>();
+        for (int i = 1; i <= 9; i++) externs.put("E" + i, 500 + i);
+
+        String[] paths = { "line by line", "--mmap" };
+        Pass1Assembler[] assemblers = { byLine(source), mapped(source) };
+        for (int p = 0; p < paths.length; p++)
+        {
+            Pass1Assembler assembler = assemblers[p];
+            check("all nine EXTRN names are imported, " + paths[p],
+                    assembler.importExterns(externs, "test") == 0 && address(assembler, "E9") == 509);
+            ConcurrentHashMap<String,Integer> entries = new ConcurrentHashMap<>();
+            check("all nine ENTRY names are exported, " + paths[p],
+                    assembler.exportEntries(entries, "test") == 0 && entries.size() == 9);
+        }
+    }
+
+    static void commaOperands() throws IOException
+    {
+        String source = "START 100\n"
+                + "LOOP MOVER AREG,X\n"
+                + "ADD BREG, X\n"
+                + "BC ANY,LOOP\n"
+                + "X DS 1\n"
+                + "END\n";
+        Pass1Assembler lines = byLine(source);
+        Pass1Assembler mapped = mapped(source);
+        check("AREG,X is a register and a symbol, line by line",
+                lines.getSymbolIndex("AREGX") == -1 && lines.getSymbolIndex("ANYLOOP") == -1);
+        check("operands without a blank after the comma, line by line", lines.symbolCount() == 2);
+        check("--mmap matches line by line for comma-separated operands", describe(mapped).equals(describe(lines)));
+    }
+
+    static void forwardEquOperand() throws IOException
+    {
+        String source = "START 100\n"
+                + "LOOP DS 1\n"
+                + "C EQU 2*N-LOOP\n"
+                + "N DS 1\n"
+                + "END\n";
+        Pass1Assembler lines = byLine(source);
+        check("EQU with a forward reference gets its value", address(lines, "C") == 2 * 101 - 100);
+        check("the EQU's IC record gets its value too", describe(lines).contains("(AD,04) (C,102)\n"));
+    }
+
+    // winding back to a statement and running the rest again has to leave
+    // the literal counts as one run gives them
+    static void rerunLiteralSavings() throws IOException
+    {
+        String[] lines = ("START 100\n"
+                + "MOVER AREG, ='5'\n"
+                + "LTORG\n"
+                + "ADD BREG, ='5'\n"
+                + "SUB CREG, ='5'\n"
+                + "LTORG\n"
+                + "MULT AREG, ='5'\n"
+                + "END\n").split("\n");
+        Pass1Assembler once = new Pass1Assembler();
+        once.shareLiteralsAcrossPools();
+        once.setQuiet(true);
+        for (String line : lines) once.processLine(line);
+
+        Pass1Assembler rerun = new Pass1Assembler();
+        rerun.shareLiteralsAcrossPools();
+        rerun.setQuiet(true);
+        rerun.keepUndoLog();
+        int[] state = new int[Pass1Assembler.STATE_SIZE];
+        for (int i = 0; i < lines.length; i++)
+        {
+            if (i == 4) rerun.saveState(state, 0);
+            rerun.processLine(lines[i]);
+        }
+        rerun.rollback(state, 0);
+        for (int i = 4; i < lines.length; i++) rerun.processLine(lines[i]);
+
+        check("an incremental rerun counts the saved literal words once",
+                literalSavings(rerun).equals(literalSavings(once)));
+        check("an incremental rerun gives the same IC and tables", describe(rerun).equals(describe(once)));
+    }
+
+    static String literalSavings(Pass1Assembler assembler)
+    {
+        PrintStream out = System.out;
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(report, true));
+        try
+        {
+            assembler.displayLiteralSavings();
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+        return report.toString();
+    }
+
+    static int address(Pass1Assembler assembler, String symbol)
+    {
+        return assembler.symbolAddress(assembler.getSymbolIndex(symbol));
+    }
+
+    static Pass1Assembler byLine(String source) throws IOException
+    {
+        Pass1Assembler assembler = new Pass1Assembler();
+        assembler.setQuiet(true);
+        for (String line : source.split("\n"))
+        {
+            assembler.processLine(line);
+        }
+        return assembler;
+    }
+
+    static Pass1Assembler mapped(String source) throws IOException
+    {
+        Path file = Files.write(dir.resolve("input.asm"), source.getBytes(StandardCharsets.UTF_8));
+        Pass1Assembler assembler = new Pass1Assembler();
+        assembler.setQuiet(true);
+        MappedSourceReader reader = new MappedSourceReader(file.toString(), assembler.keywords());
+        String[] tokens = new String[8];
+        while (reader.nextLine())
+        {
+            tokens = reader.tokens(tokens);
+            assembler.processTokens(tokens, reader.count());
+        }
+        reader.close();
+        return assembler;
+    }
+
+    // the IC and the symbol and literal addresses, one per line
+    static String describe(Pass1Assembler assembler)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < assembler.icSize(); i++)
+        {
+            sb.append(assembler.icRecord(i)).append('\n');
+        }
+        for (int i = 0; i < assembler.symbolCount(); i++)
+        {
+            sb.append("S ").append(i).append(' ').append(assembler.symbolAddress(i)).append('\n');
+        }
+        for (int i = 0; i < assembler.literalCount(); i++)
+        {
+            sb.append("L ").append(i).append(' ').append(assembler.literalAddress(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static void check(String what, boolean ok)
+    {
+        checks++;
+        if (!ok)
+        {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,553 @@
+import java.util.*;
+
+// Optional pass over the buffered IC between pass 1 and pass 2. It removes
+//
+//   - MOVER r, X straight after MOVEM r, X (r already holds X), and
+//     MOVEM r, X straight after MOVER r, X (X already holds r)
+//   - instructions after STOP or BC ANY that execution cannot reach: up to
+//     the next labelled statement, instruction at an address some symbol
+//     holds, or anything that is not an instruction
+//   - BC to the instruction right after it
+//   - literal pool words no instruction uses any more, and words for a
+//     value already placed in an earlier pool (the uses then go there)
+//
+// and sends a BC whose target is itself a BC ANY straight to where that one
+// goes. Labelled statements are never removed, and neither is anything an
+// address refers to: an EQU or ORIGIN like L+3 keeps the words from L to
+// L+3 where they are relative to L, and an EQU to a plain number inside the
+// program keeps everything up to that address, since instructions may read
+// whatever word is there.
+//
+// Removing words moves everything after them, so afterwards the addresses
+// are laid out again the way pass 1 did it: labels follow their statements,
+// literals their pool words, ORIGIN and EQU operands with symbols in them are
+// evaluated again (and a folded (C,n) operand rewritten), and an ORIGIN to a
+// plain number stays where it was, the gap before it growing instead. SYMTAB
+// and LITTAB then describe the smaller program; a literal whose word was
+// removed goes back to address 0, unplaced.
+//
+// A program whose instructions read or store into instruction words is left
+// as it is: those words hold operand addresses, which change whenever
+// anything moves. So is a program with an ORIGIN that moves the LC back:
+// the words placed after it overwrite earlier ones in the image, and which
+// ones they overwrite changes as soon as anything before them is removed.
+class PeepholeOptimizer
+{
+    // IS opcodes and the condition code it looks at
+    static final int STOP = 0;
+    static final int MOVER = 4;
+    static final int MOVEM = 5;
+    static final int BC = 7;
+    static final int ANY = 6;
+
+    // AD opcodes
+    static final int START = 1;
+    static final int ORIGIN = 3;
+    static final int EQU = 4;
+    static final int LTORG = 5;
+
+    // a chain of BC ANY is followed this far; a longer one is most likely a loop
+    static final int MAX_HOPS = 16;
+
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    // an ORIGIN or EQU operand with symbols in it, as pass 1 parsed it
+    static class AddressOperand
+    {
+        final AddressExpression expression;
+        final int[] symbols;    // SYMTAB index of each symbol of expression
+
+        AddressOperand(AddressExpression expression, int[] symbols)
+        {
+            this.expression = expression;
+            this.symbols = symbols;
+        }
+    }
+
+    private final List<ICRecord> ic;
+    private final SymbolTable symtab;
+    private final List<LiteralTableEntry> littab;
+    private final Map<ICRecord,AddressOperand> operands;
+
+    private boolean[] removed;      // per IC position, until compact()
+    private int[] labelledAt;       // SYMTAB index -> IC position of its label, or -1
+    private BitSet fixed;           // IC positions that stay: jump targets and addressed words
+
+    int movesRemoved;
+    int unreachableRemoved;
+    int jumpsRemoved;
+    int jumpsThreaded;
+    int literalsRemoved;
+    int wordsBefore;
+    int wordsAfter;
+    String skipped;    // why the program was left as it is, or null
+
+    PeepholeOptimizer(List<ICRecord> ic, SymbolTable symtab, List<LiteralTableEntry> littab,
+                      Map<ICRecord,AddressOperand> operands)
+    {
+        this.ic = ic;
+        this.symtab = symtab;
+        this.littab = littab;
+        this.operands = operands != null ? operands : Collections.emptyMap();
+    }
+
+    void run()
+    {
+        removed = new boolean[ic.size()];
+        int[] lc = addresses();
+        wordsBefore = words();
+        wordsAfter = wordsBefore;
+        skipped = usesCodeAsData(lc);
+        if (skipped == null) skipped = overlaysPlacedWords(lc);
+        if (skipped != null) return;
+        findFixed(lc);
+
+        threadJumps();
+        removeRedundantMoves();
+        removeUnreachable();
+        shrinkLiteralPools();
+        removeJumpsToNext();
+
+        compact();
+        layOut();
+        wordsAfter = words();
+    }
+
+    int instructionsRemoved()
+    {
+        return movesRemoved + unreachableRemoved + jumpsRemoved;
+    }
+
+    String summary()
+    {
+        if (skipped != null) return "Optimizer: program left as it is; " + skipped + ".";
+        return "Optimizer: removed " + instructionsRemoved() + " instruction(s) (" + movesRemoved
+                + " redundant MOVER/MOVEM, " + unreachableRemoved + " unreachable, " + jumpsRemoved
+                + " BC to the next instruction) and " + literalsRemoved + " literal word(s); "
+                + jumpsThreaded + " BC(s) sent straight to the end of a jump chain; "
+                + wordsBefore + " -> " + wordsAfter + " words.";
+    }
+
+    private static boolean isInstruction(ICRecord r, int opcode)
+    {
+        return r.cls == ICRecord.IS && r.opcode == opcode;
+    }
+
+    private static boolean isBranchAlways(ICRecord r)
+    {
+        return isInstruction(r, BC) && r.reg == ANY && r.kind == ICRecord.SYMBOL;
+    }
+
+    // words of code and data the IC places
+    private int words()
+    {
+        int words = 0;
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (removed.length > i && removed[i]) continue;
+            if (r.cls == ICRecord.IS) words++;
+            else if (r.cls == ICRecord.DL) words += r.opcode == 1 ? r.constant : 1;
+        }
+        return words;
+    }
+
+    // LC at each IC record as pass 2 will see it, from the current SYMTAB
+    private int[] addresses()
+    {
+        int[] lc = new int[ic.size() + 1];
+        int LC = 0;
+        for (int i = 0; i < ic.size(); i++)
+        {
+            lc[i] = LC;
+            ICRecord r = ic.get(i);
+            if (r.cls == ICRecord.IS) LC++;
+            else if (r.cls == ICRecord.DL) LC += r.opcode == 1 ? r.constant : 1;
+            else if (r.opcode == START) LC = r.constant;
+            else if (r.opcode == ORIGIN)
+            {
+                if (r.kind == ICRecord.CONSTANT) LC = r.constant;
+                else if (r.kind == ICRecord.SYMBOL && symtab.get(r.index).address != -1)
+                {
+                    LC = symtab.get(r.index).address + r.constant;
+                }
+            }
+        }
+        lc[ic.size()] = LC;
+        return lc;
+    }
+
+    // a description of the first instruction that has another instruction
+    // word as its data operand, or null
+    private String usesCodeAsData(int[] lc)
+    {
+        BitSet code = new BitSet();
+        for (int i = 0; i < ic.size(); i++)
+        {
+            if (ic.get(i).cls == ICRecord.IS && lc[i] >= 0) code.set(lc[i]);
+        }
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (r.cls != ICRecord.IS || r.opcode == BC || r.kind != ICRecord.SYMBOL) continue;
+            int address = symtab.get(r.index).address;
+            if (address >= 0 && code.get(address))
+            {
+                return "the instruction at LC " + lc[i] + " uses " + symtab.get(r.index).symbol
+                        + ", an instruction at LC " + address + ", as data";
+            }
+        }
+        return null;
+    }
+
+    // a description of the first ORIGIN that moves the LC back over words
+    // already placed, or null
+    private String overlaysPlacedWords(int[] lc)
+    {
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (r.cls == ICRecord.AD && r.opcode == ORIGIN && lc[i + 1] < lc[i])
+            {
+                return "the ORIGIN at LC " + lc[i] + " moves the LC back to " + lc[i + 1]
+                        + ", over words already placed";
+            }
+        }
+        return null;
+    }
+
+    // a labelled statement, or an instruction at an address that any symbol
+    // holds (an EQU may point into code), may be jumped to; see also pin()
+    private void findFixed(int[] lc)
+    {
+        labelledAt = new int[symtab.size()];
+        Arrays.fill(labelledAt, -1);
+        BitSet held = new BitSet();
+        for (int s = 0; s < symtab.size(); s++)
+        {
+            int address = symtab.get(s).address;
+            if (address >= 0) held.set(address);
+        }
+        int[] pinned = pin(lc);
+        fixed = new BitSet(ic.size());
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (r.label != ICRecord.NO_INDEX) labelledAt[r.label] = i;
+            if (r.label != ICRecord.NO_INDEX || r.cls == ICRecord.IS && held.get(lc[i])
+                    || r.cls != ICRecord.AD && lc[i] >= 0 && lc[i] < pinned.length && pinned[lc[i]] > 0)
+            {
+                fixed.set(i);
+            }
+        }
+    }
+
+    // addresses whose words must not move relative to each other, as
+    // pinned[a] > 0: from the symbols of each ORIGIN/EQU operand to its value,
+    // and from the start of the program to a plain-number EQU inside it
+    private int[] pin(int[] lc)
+    {
+        int low = Integer.MAX_VALUE;
+        int high = 0;
+        for (int i = 0; i < ic.size(); i++)
+        {
+            if (ic.get(i).cls == ICRecord.AD) continue;
+            low = Math.min(low, lc[i]);
+            high = Math.max(high, lc[i]);
+        }
+        if (low > high) return new int[0];
+
+        int[] starts = new int[high + 2];    // running sum gives pinned[]
+        for (ICRecord r : ic)
+        {
+            if (r.cls != ICRecord.AD || r.opcode != ORIGIN && r.opcode != EQU) continue;
+            AddressOperand operand = operands.get(r);
+            int from = Integer.MAX_VALUE;
+            int to = Integer.MIN_VALUE;
+            if (operand != null || r.kind == ICRecord.SYMBOL)
+            {
+                int[] symbols = operand != null ? operand.symbols : new int[] { r.index };
+                int[] coefficients = operand != null ? operand.expression.coefficients : new int[] { 1 };
+                int value = operand != null ? operand.expression.constant : r.constant;
+                int sum = 0;
+                for (int k = 0; k < symbols.length; k++)
+                {
+                    int a = symtab.get(symbols[k]).address;
+                    if (a == -1) continue;
+                    from = Math.min(from, a);
+                    to = Math.max(to, a);
+                    value += coefficients[k] * a;
+                    sum += coefficients[k];
+                }
+                // an address (L+3) rather than a distance (B-A)
+                if (sum == 1)
+                {
+                    from = Math.min(from, value);
+                    to = Math.max(to, value);
+                }
+            }
+            else if (r.opcode == EQU && r.kind == ICRecord.CONSTANT)
+            {
+                from = low;
+                to = r.constant;
+            }
+            from = Math.max(from, low);
+            to = Math.min(to, high);
+            if (from > to) continue;
+            starts[from]++;
+            starts[to + 1]--;
+        }
+        for (int a = 1; a < starts.length; a++) starts[a] += starts[a - 1];
+        return starts;
+    }
+
+    private void threadJumps()
+    {
+        for (ICRecord r : ic)
+        {
+            if (!isInstruction(r, BC) || r.kind != ICRecord.SYMBOL) continue;
+            int target = r.index;
+            for (int hops = 0; hops < MAX_HOPS; hops++)
+            {
+                int at = labelledAt[target];
+                if (at == -1 || !isBranchAlways(ic.get(at)) || ic.get(at).index == target) break;
+                target = ic.get(at).index;
+            }
+            if (target != r.index)
+            {
+                r.index = target;
+                jumpsThreaded++;
+            }
+        }
+    }
+
+    private void removeRedundantMoves()
+    {
+        ICRecord last = null;
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (last != null && !fixed.get(i) && r.kind == ICRecord.SYMBOL && last.kind == ICRecord.SYMBOL
+                    && r.index == last.index && r.reg == last.reg
+                    && (isInstruction(last, MOVEM) && isInstruction(r, MOVER)
+                        || isInstruction(last, MOVER) && isInstruction(r, MOVEM)))
+            {
+                removed[i] = true;
+                movesRemoved++;
+                continue;
+            }
+            last = r;
+        }
+    }
+
+    private void removeUnreachable()
+    {
+        boolean dead = false;
+        for (int i = 0; i < ic.size(); i++)
+        {
+            if (removed[i]) continue;
+            ICRecord r = ic.get(i);
+            if (dead && r.cls == ICRecord.IS && !fixed.get(i))
+            {
+                removed[i] = true;
+                unreachableRemoved++;
+                continue;
+            }
+            dead = isInstruction(r, STOP) || isBranchAlways(r);
+        }
+    }
+
+    private void shrinkLiteralPools()
+    {
+        int[] uses = new int[littab.size()];
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (!removed[i] && r.kind == ICRecord.LITERAL) uses[r.index]++;
+        }
+
+        // value -> LITTAB index of a word that stays and is safe to share
+        Map<Integer,Integer> placed = new HashMap<>();
+        int[] sharedWith = new int[littab.size()];
+        Arrays.fill(sharedWith, -1);
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (removed[i] || r.literal == ICRecord.NO_INDEX || fixed.get(i)) continue;
+
+            Integer earlier = placed.get(r.constant);
+            if (uses[r.literal] == 0)
+            {
+                removed[i] = true;
+                literalsRemoved++;
+            }
+            else if (earlier != null)
+            {
+                sharedWith[r.literal] = earlier;
+                removed[i] = true;
+                literalsRemoved++;
+            }
+            else
+            {
+                placed.put(r.constant, r.literal);
+            }
+        }
+
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (r.kind == ICRecord.LITERAL && sharedWith[r.index] != -1) r.index = sharedWith[r.index];
+        }
+    }
+
+    // after shrinkLiteralPools, which may have emptied the pool a BC jumped over
+    private void removeJumpsToNext()
+    {
+        for (int i = 0; i < ic.size(); i++)
+        {
+            ICRecord r = ic.get(i);
+            if (removed[i] || fixed.get(i) || !isInstruction(r, BC) || r.kind != ICRecord.SYMBOL) continue;
+            int target = labelledAt[r.index];
+            if (target <= i) continue;
+            int j = i + 1;
+            // LTORG and EQU take no room, so a BC over them alone goes nowhere
+            while (j < target && (removed[j]
+                    || ic.get(j).cls == ICRecord.AD && (ic.get(j).opcode == LTORG || ic.get(j).opcode == EQU)))
+            {
+                j++;
+            }
+            if (j == target && ic.get(j).cls == ICRecord.IS)
+            {
+                removed[i] = true;
+                jumpsRemoved++;
+            }
+        }
+    }
+
+    private void compact()
+    {
+        int kept = 0;
+        for (int i = 0; i < ic.size(); i++)
+        {
+            if (!removed[i]) ic.set(kept++, ic.get(i));
+        }
+        ic.subList(kept, ic.size()).clear();
+        removed = new boolean[0];
+    }
+
+    // --- Laying out the addresses again ---
+
+    private int[] address;                // new SYMTAB addresses
+    // SYMTAB index -> EQUs waiting for that symbol to be defined
+    private Map<Integer,List<ICRecord>> waitingOn;
+
+    private void layOut()
+    {
+        address = new int[symtab.size()];
+        for (int s = 0; s < address.length; s++) address[s] = symtab.get(s).address;
+        // whatever a statement defines gets its address again below;
+        // EXTRNs and undefined symbols keep theirs
+        for (ICRecord r : ic)
+        {
+            if (r.label != ICRecord.NO_INDEX) address[r.label] = -1;
+        }
+        for (LiteralTableEntry entry : littab) entry.address = 0;
+        waitingOn = new HashMap<>();
+
+        int LC = 0;
+        for (ICRecord r : ic)
+        {
+            boolean isEqu = r.cls == ICRecord.AD && r.opcode == EQU;
+            if (r.label != ICRecord.NO_INDEX && !isEqu) define(r.label, LC);
+
+            if (r.cls == ICRecord.IS)
+            {
+                LC++;
+            }
+            else if (r.cls == ICRecord.DL)
+            {
+                if (r.literal != ICRecord.NO_INDEX) littab.get(r.literal).address = LC;
+                LC += r.opcode == 1 ? r.constant : 1;
+            }
+            else if (r.opcode == START)
+            {
+                LC = r.constant;
+            }
+            else if (r.opcode == ORIGIN)
+            {
+                // one pass 1 could not evaluate left the LC where it was
+                int value = r.kind == ICRecord.NONE ? UNRESOLVED : evaluate(r);
+                if (value != UNRESOLVED)
+                {
+                    LC = value;
+                    if (r.kind == ICRecord.CONSTANT) r.constant = value;
+                }
+            }
+            else if (isEqu && r.label != ICRecord.NO_INDEX)
+            {
+                settle(r);
+            }
+        }
+
+        for (int s = 0; s < address.length; s++) symtab.get(s).address = address[s];
+    }
+
+    // EQUs in any order, as in pass 1: one waits on a symbol it uses that
+    // has no address yet, and is settled again when that symbol gets one
+    private void define(int symbol, int value)
+    {
+        address[symbol] = value;
+        if (waitingOn.isEmpty()) return;
+        List<ICRecord> waiting = waitingOn.remove(symbol);
+        if (waiting == null) return;
+        for (ICRecord r : waiting) settle(r);
+    }
+
+    private void settle(ICRecord r)
+    {
+        int missing = undefinedSymbol(r);
+        if (missing != -1)
+        {
+            waitingOn.computeIfAbsent(missing, k -> new ArrayList<>()).add(r);
+            return;
+        }
+        int value = evaluate(r);
+        if (value == UNRESOLVED) return;
+        if (r.kind == ICRecord.CONSTANT) r.constant = value;
+        define(r.label, value);
+    }
+
+    // a symbol of r's operand without an address, or -1
+    private int undefinedSymbol(ICRecord r)
+    {
+        AddressOperand operand = operands.get(r);
+        if (operand != null)
+        {
+            for (int symbol : operand.symbols)
+            {
+                if (address[symbol] == -1) return symbol;
+            }
+            return -1;
+        }
+        return r.kind == ICRecord.SYMBOL && address[r.index] == -1 ? r.index : -1;
+    }
+
+    private int evaluate(ICRecord r)
+    {
+        AddressOperand operand = operands.get(r);
+        if (operand != null)
+        {
+            int value = operand.expression.constant;
+            for (int i = 0; i < operand.symbols.length; i++)
+            {
+                int a = address[operand.symbols[i]];
+                if (a == -1) return UNRESOLVED;
+                value += operand.expression.coefficients[i] * a;
+            }
+            return value;
+        }
+        if (r.kind == ICRecord.SYMBOL) return address[r.index] == -1 ? UNRESOLVED : address[r.index] + r.constant;
+        if (r.kind == ICRecord.CONSTANT) return r.constant;
+        return UNRESOLVED;
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.*;
+import java.util.*;
+
+// Throughput of Pass1Assembler.processLine on a typical statement mix.
+// IC goes to a sink that drops it so only pass 1 itself is measured.
+// Reports the mean of several measured rounds after a warm-up.
+//
+//   javac *.java && java ProcessLineBenchmark [statementsPerRound]
+class ProcessLineBenchmark
+{
+    static final String[] BODY = {
+        "LOOP MOVER AREG, X",
+        "ADD BREG, ='10'",
+        "SUB CREG, ='5'",
+        "MULT AREG, Y",
+        "COMP BREG, X",
+        "BC GT, LOOP",
+        "BC ANY, NEXT",
+        "MOVEM AREG, Y",
+        "NEXT READ X",
+        "PRINT Y",
+        "DIV DREG, ='2'",
+        "LTORG",
+    };
+
+    static String[] generate(int statements)
+    {
+        String[] lines = new String[statements + 4];
+        int n = 0;
+        lines[n++] = "START 100";
+        for (int i = 0; i < statements; i++)
+        {
+            lines[n++] = BODY[i % BODY.length];
+        }
+        lines[n++] = "X DS 1";
+        lines[n++] = "Y DC 5";
+        lines[n++] = "END";
+        return lines;
+    }
+
+    static long round(String[] lines) throws IOException
+    {
+        Pass1Assembler assembler = new Pass1Assembler();
+        assembler.openIntermediateCodeStream(new ICSink()
+        {
+            public void write(ICRecord record) { }
+            public void close() { }
+        });
+        long start = System.nanoTime();
+        for (String line : lines)
+        {
+            assembler.processLine(line);
+        }
+        long ns = System.nanoTime() - start;
+        assembler.closeIntermediateCodeStream();
+        return ns;
+    }
+
+    public static void main(String args[]) throws IOException
+    {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String[] lines = generate(statements);
+
+        for (int i = 0; i < 5; i++) round(lines);
+
+        int rounds = 10;
+        long total = 0;
+        for (int i = 0; i < rounds; i++) total += round(lines);
+        double seconds = total / 1e9 / rounds;
+        System.out.printf("processLine: %.0f statements/sec (%.1f ns/statement)%n",
+                lines.length / seconds, seconds * 1e9 / lines.length);
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.*;
+
+// SYMTAB keeps entries in insertion order so (S,nn) indices stay stable,
+// and a name -> index map gives O(1) lookup instead of scanning the list.
+// Each name is stored once; intern() hands back that stored instance so
+// repeated references to a symbol share a single String.
+class SymbolTable implements Iterable<SymbolTableEntry>
+{
+    private final List<SymbolTableEntry> entries;
+    private final Map<String,Integer> index;
+
+    SymbolTable()
+    {
+        entries = new ArrayList<>();
+        index = new HashMap<>();
+    }
+
+    int indexOf(String symbol)
+    {
+        Integer i = index.get(symbol);
+        return i == null ? -1 : i;
+    }
+
+    String intern(String symbol)
+    {
+        Integer i = index.get(symbol);
+        return i == null ? symbol : entries.get(i).symbol;
+    }
+
+    int add(String symbol, int address, int length)
+    {
+        int i = entries.size();
+        entries.add(new SymbolTableEntry(symbol, address, length));
+        index.put(symbol, i);
+        return i;
+    }
+
+    SymbolTableEntry get(int i)
+    {
+        return entries.get(i);
+    }
+
+    // drops every entry from index size on
+    void truncate(int size)
+    {
+        for (int i = entries.size() - 1; i >= size; i--)
+        {
+            index.remove(entries.get(i).symbol);
+        }
+        entries.subList(size, entries.size()).clear();
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+    public Iterator<SymbolTableEntry> iterator()
+    {
+        return entries.iterator();
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.*;
+import java.util.*;
+
+// Times pass 1 over synthetic programs with a growing number of symbols.
+// Every symbol is first used as a forward reference and later defined with
+// DS, so each one is looked up at least twice. With hashed SYMTAB lookups the
+// ns/symbol column should stay roughly flat as the symbol count grows.
+//
+//   javac *.java && java -Xmx2g SymbolTableBenchmark [maxSymbols]
+class SymbolTableBenchmark
+{
+    static List<String> generate(int symbols)
+    {
+        List<String> lines = new ArrayList<>(2 * symbols + 2);
+        lines.add("START 100");
+        for (int i = 0; i < symbols; i++)
+        {
+            lines.add("MOVER AREG, S" + i);
+        }
+        for (int i = 0; i < symbols; i++)
+        {
+            lines.add("S" + i + " DS 1");
+        }
+        lines.add("END");
+        return lines;
+    }
+
+    static long runPass1(List<String> lines) throws IOException
+    {
+        Pass1Assembler assembler = new Pass1Assembler();
+        long start = System.nanoTime();
+        for (String line : lines)
+        {
+            assembler.processLine(line);
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String args[]) throws IOException
+    {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        // warm up the JIT on a small program first
+        List<String> warmup = generate(10000);
+        for (int i = 0; i < 5; i++) runPass1(warmup);
+
+        System.out.println("Symbols\t\tTime(ms)\tns/symbol");
+        for (int n = 1000; n <= max; n *= 10)
+        {
+            List<String> lines = generate(n);
+            long ns = runPass1(lines);
+            System.out.printf("%-10d\t%-8d\t%d%n", n, ns / 1000000, ns / n);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+class SymbolTableEntry
+{
+    String symbol;
+    int address;
+    int length;
+
+    SymbolTableEntry(String symbol, int address, int length)
+    {
+        this.symbol = symbol;
+        this.address = address;
+        this.length = length;
+    }
+}
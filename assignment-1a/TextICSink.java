@@ -0,0 +1,23 @@
+import java.io.*;
+
+// Human-readable IC, same text as IntermediateCode.txt. Kept for debugging.
+class TextICSink implements ICSink
+{
+    private final BufferedWriter bw;
+
+    TextICSink(String filename) throws IOException
+    {
+        bw = new BufferedWriter(new FileWriter(filename), 1 << 16);
+    }
+
+    public void write(ICRecord record) throws IOException
+    {
+        bw.write(record.toString());
+        bw.write("\n");
+    }
+
+    public void close() throws IOException
+    {
+        bw.close();
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs pass 1 (assignment-1a) and pass 2 at the same time in one process,
+ * without writing the IC, symtab or littab to disk.
+ *
+ * Pass 1 runs on its own thread and streams its IC records, together with
+ * each symbol and literal address as soon as it is known, into a bounded
+ * queue. The main thread drains the queue into a BackpatchTranslator, which
+ * translates every record straight away and parks operands that are still
+ * forward references until their definition comes through. The queue carries
+ * batches of ints rather than one object per record so the hand-off costs
+ * little next to the translation itself.
+ *
+ *   javac -encoding UTF-8 -sourcepath ../assignment-1a *.java
+ *   java AssemblerPipeline [--mmap]          (reads ./input.asm)
+ */
+public class AssemblerPipeline {
+
+    // entry layout in a batch: type, then the six record fields
+    static final int ENTRY_SIZE = 7;
+    static final int RECORD = 0, SYMBOL_DEF = 1, LITERAL_DEF = 2;
+
+    static final int BATCH_ENTRIES = 1024;
+    static final int QUEUE_BATCHES = 64;
+    static final int[] END_OF_STREAM = new int[0];
+
+    /**
+     * Pass 1's IC sink: packs records and definitions into batches and hands
+     * full batches to the queue, blocking while pass 2 is QUEUE_BATCHES behind.
+     */
+    static class PipelineSink implements ICSink {
+        private final BlockingQueue<int[]> queue;
+        private int[] batch = new int[BATCH_ENTRIES * ENTRY_SIZE];
+        private int used = 0;
+        private boolean closed = false;
+
+        PipelineSink(BlockingQueue<int[]> queue) {
+            this.queue = queue;
+        }
+
+        public void write(ICRecord r) throws IOException {
+            add(RECORD, r.cls, r.opcode, r.reg, r.kind, r.index, r.constant);
+        }
+
+        public void defineSymbol(int index, int address) throws IOException {
+            add(SYMBOL_DEF, 0, 0, 0, Pass2Assembler.SYMBOL, index, address);
+        }
+
+        public void defineLiteral(int index, int address) throws IOException {
+            add(LITERAL_DEF, 0, 0, 0, Pass2Assembler.LITERAL, index, address);
+        }
+
+        private void add(int type, int cls, int code, int reg, int kind, int index, int constant) throws IOException {
+            int[] b = batch;
+            int i = used;
+            b[i] = type;
+            b[i + 1] = cls;
+            b[i + 2] = code;
+            b[i + 3] = reg;
+            b[i + 4] = kind;
+            b[i + 5] = index;
+            b[i + 6] = constant;
+            used = i + ENTRY_SIZE;
+            if (used == b.length) {
+                put(b);
+                batch = new int[b.length];
+                used = 0;
+            }
+        }
+
+        /**
+         * Sends what is left and then the end marker. Safe to call more than once.
+         */
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (used > 0) {
+                put(Arrays.copyOf(batch, used));
+                used = 0;
+            }
+            put(END_OF_STREAM);
+        }
+
+        private void put(int[] b) throws IOException {
+            try {
+                queue.put(b);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("pass 2 stopped");
+            }
+        }
+    }
+
+    /**
+     * Pass 1 over filename, run on the producer thread.
+     */
+    static class Pass1Task implements Runnable {
+        final String filename;
+        final boolean mmap;
+        final PipelineSink sink;
+        volatile Throwable failure;
+
+        Pass1Task(String filename, boolean mmap, PipelineSink sink) {
+            this.filename = filename;
+            this.mmap = mmap;
+            this.sink = sink;
+        }
+
+        public void run() {
+            try {
+                Pass1Assembler assembler = new Pass1Assembler();
+                assembler.openIntermediateCodeStream(sink);
+                if (mmap) {
+                    MappedSourceReader reader = new MappedSourceReader(filename, assembler.keywords());
+                    String[] tokens = new String[8];
+                    try {
+                        while (reader.nextLine()) {
+                            tokens = reader.tokens(tokens);
+                            assembler.processTokens(tokens, reader.count());
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                } else {
+                    try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+                        String line;
+                        while ((line = br.readLine()) != null) {
+                            assembler.processLine(line);
+                        }
+                    }
+                }
+                assembler.closeIntermediateCodeStream();
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                // pass 2 must always see the end of the stream, even after an error
+                try {
+                    sink.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Assembles filename into Pass2Assembler.machineCode.
+     *
+     * @return The translator, for its counters.
+     */
+    static BackpatchTranslator assemble(String filename, boolean mmap) throws Exception {
+        BlockingQueue<int[]> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        Pass1Task pass1 = new Pass1Task(filename, mmap, new PipelineSink(queue));
+        Thread producer = new Thread(pass1, "pass1");
+        producer.setDaemon(true);
+
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        BackpatchTranslator pass2 = new BackpatchTranslator();
+        producer.start();
+        try {
+            int[] b;
+            while ((b = queue.take()) != END_OF_STREAM) {
+                for (int i = 0; i < b.length; i += ENTRY_SIZE) {
+                    if (b[i] == RECORD) {
+                        pass2.record(b[i + 1], b[i + 2], b[i + 3], b[i + 4], b[i + 5], b[i + 6]);
+                    } else {
+                        pass2.define(b[i + 4], b[i + 5], b[i + 6]);
+                    }
+                }
+            }
+        } catch (RuntimeException | InterruptedException e) {
+            producer.interrupt();
+            throw e;
+        }
+        producer.join();
+        if (pass1.failure instanceof Exception) {
+            throw (Exception) pass1.failure;
+        } else if (pass1.failure != null) {
+            throw new RuntimeException(pass1.failure);
+        }
+        pass2.finish();
+        return pass2;
+    }
+
+    public static void main(String[] args) {
+        // --mmap reads input.asm through MappedSourceReader instead of BufferedReader
+        boolean mmap = false;
+        for (String arg : args) {
+            if (arg.equals("--mmap")) {
+                mmap = true;
+            } else {
+                System.err.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        try {
+            BackpatchTranslator pass2 = assemble("./input.asm", mmap);
+            Pass2Assembler.writeMachineCode("./machinecode.txt");
+            System.out.println(pass2.patched + " forward reference(s) backpatched.");
+            if (Pass2Assembler.unresolvedCount > 0) {
+                System.err.println(Pass2Assembler.unresolvedCount + " operand(s) referred to undefined symbols or literals.");
+            }
+        } catch (Exception e) {
+            System.err.println("Error during assembly: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache of finished assemblies. The key is a SHA-256 of the source
+ * text together with OpcodeTable.VERSION, Pass2Assembler.TRANSLATION_VERSION
+ * and the options the run was given (such as --mmap), so editing the
+ * program, the instruction set or the translation, or running in another
+ * mode, misses. An entry holds the output files of one run (machine code,
+ * SYMTAB, LITTAB, POOLTAB) and the diagnostics it printed; a hit writes the
+ * files back, prints the diagnostics again and the source is not assembled
+ * at all.
+ *
+ * Each entry is one file, <key>.entry, in the cache directory. A hit touches
+ * its modification time, and after every store the least recently used
+ * entries are deleted until the directory is under the size limit. Hit and
+ * miss counts are kept across runs in a small stats file.
+ */
+class AssemblyCache {
+
+    static final int ENTRY_MAGIC = 0x41534332; // "ASC2"
+    static final String SUFFIX = ".entry";
+
+    final Path dir;
+    final long limitBytes;
+    int hits = 0;
+    int misses = 0;
+
+    AssemblyCache(Path dir, long limitBytes) throws IOException {
+        this.dir = dir;
+        this.limitBytes = limitBytes;
+        Files.createDirectories(dir);
+        loadStats();
+    }
+
+    /**
+     * Cache key for source: hex SHA-256 of its bytes, the opcode table and
+     * translation versions and options, the mode flags of the run.
+     */
+    static String key(Path source, List<String> options) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        }
+        digest.update(ByteBuffer.allocate(8).putInt(OpcodeTable.VERSION).putInt(Pass2Assembler.TRANSLATION_VERSION).array());
+        for (String option : options) {
+            digest.update(option.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the files stored under key into outDir, prints the stored
+     * diagnostics to diagnostics and counts a hit, or counts a miss if there
+     * is no usable entry.
+     *
+     * The whole entry is read and checked before anything is written, so a
+     * truncated or corrupt entry is dropped without touching outDir.
+     *
+     * @return The restored file names, or null on a miss.
+     */
+    List<String> restore(String key, Path outDir, PrintStream diagnostics) throws IOException {
+        Path entry = dir.resolve(key + SUFFIX);
+        if (Files.exists(entry)) {
+            Map<String, byte[]> files = new LinkedHashMap<>();
+            byte[] messages = null;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry), 1 << 16))) {
+                long size = Files.size(entry);
+                if (in.readInt() != ENTRY_MAGIC) {
+                    throw new IOException("bad magic");
+                }
+                int count = in.readInt();
+                if (count < 0) {
+                    throw new IOException("bad file count " + count);
+                }
+                for (int i = 0; i < count; i++) {
+                    String name = checkName(in.readUTF());
+                    files.put(name, readBlock(in, size));
+                }
+                messages = readBlock(in, size);
+                if (in.read() != -1) {
+                    throw new IOException("trailing bytes");
+                }
+            } catch (IOException e) {
+                System.err.println("Warning: dropping unreadable cache entry " + entry + ": "
+                        + (e instanceof EOFException ? "truncated" : e.getMessage()));
+                Files.deleteIfExists(entry);
+                files = null;
+            }
+            if (files != null) {
+                for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                    Files.write(outDir.resolve(file.getKey()), file.getValue());
+                }
+                diagnostics.write(messages, 0, messages.length);
+                diagnostics.flush();
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+                hits++;
+                saveStats();
+                return new ArrayList<>(files.keySet());
+            }
+        }
+        misses++;
+        saveStats();
+        return null;
+    }
+
+    /**
+     * A length-prefixed block of an entry that is entrySize bytes long.
+     */
+    private static byte[] readBlock(DataInputStream in, long entrySize) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > entrySize) {
+            throw new IOException("bad block length " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * An entry only ever holds plain file names (store() writes getFileName()),
+     * so anything that could point outside the output directory is corrupt.
+     */
+    private static String checkName(String name) throws IOException {
+        if (name.isEmpty() || name.equals(".") || name.contains("..")
+                || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0 || name.indexOf(File.separatorChar) >= 0
+                || name.indexOf(':') >= 0 || name.indexOf('\0') >= 0 || Paths.get(name).isAbsolute()) {
+            throw new IOException("bad file name " + name);
+        }
+        return name;
+    }
+
+    /**
+     * Stores files and the run's diagnostics (what it printed to stderr)
+     * under key, then evicts least recently used entries until the cache
+     * fits in limitBytes. The entry is written to a temporary file and
+     * renamed, so a reader never sees half of it.
+     */
+    void store(String key, List<Path> files, byte[] diagnostics) throws IOException {
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(ENTRY_MAGIC);
+            out.writeInt(files.size());
+            for (Path file : files) {
+                byte[] data = Files.readAllBytes(file);
+                out.writeUTF(file.getFileName().toString());
+                out.writeInt(data.length);
+                out.write(data);
+            }
+            out.writeInt(diagnostics.length);
+            out.write(diagnostics);
+        }
+        Files.move(tmp, dir.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict();
+    }
+
+    /**
+     * Deletes the oldest entries until the total size is at most limitBytes.
+     */
+    void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : stream) {
+                entries.add(p);
+            }
+        }
+        Map<Path, Long> used = new HashMap<>();
+        for (Path p : entries) {
+            used.put(p, Files.getLastModifiedTime(p).toMillis());
+        }
+        entries.sort((a, b) -> Long.compare(used.get(b), used.get(a))); // newest first
+
+        long total = 0;
+        for (Path p : entries) {
+            total += Files.size(p);
+            if (total > limitBytes) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private void loadStats() {
+        Path stats = dir.resolve("stats");
+        try {
+            String[] parts = new String(Files.readAllBytes(stats)).trim().split("\\s+");
+            hits = Integer.parseInt(parts[0]);
+            misses = Integer.parseInt(parts[1]);
+        } catch (IOException | RuntimeException e) {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    private void saveStats() throws IOException {
+        Files.write(dir.resolve("stats"), (hits + " " + misses + "\n").getBytes());
+    }
+}
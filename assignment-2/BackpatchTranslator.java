@@ -0,0 +1,103 @@
+/**
+ * Pass 2 for when the symbol and literal tables are still being filled in,
+ * i.e. when IC records arrive while pass 1 is running.
+ *
+ * A word whose operand is not defined yet is written with a placeholder and
+ * parked on a chain for that symbol or literal (the table of incomplete
+ * instructions). The chain is threaded through the operand fields of the
+ * parked words themselves: the table holds the newest parked word, and each
+ * parked word holds the previous one, -1 ending the chain. define() walks the
+ * chain and patches in the address, so the finished machine code is the same
+ * as that of the two-pass run.
+ */
+class BackpatchTranslator extends Pass2Assembler.SequentialTranslator {
+
+    private static final int END_OF_CHAIN = -1;
+
+    // symbol/literal index -> newest parked word, UNRESOLVED for none
+    private final Pass2Assembler.AddressTable symbolChains = new Pass2Assembler.AddressTable();
+    private final Pass2Assembler.AddressTable literalChains = new Pass2Assembler.AddressTable();
+
+    int patched = 0; // words filled in by define()
+
+    /**
+     * Starts with empty tables and no machine code.
+     */
+    BackpatchTranslator() {
+        symtab = Pass2Assembler.symtab = new Pass2Assembler.AddressTable();
+        littab = Pass2Assembler.littab = new Pass2Assembler.AddressTable();
+    }
+
+    @Override
+    int resolve(int kind, int index) {
+        int addr = table(kind).get(index);
+        if (addr != Pass2Assembler.AddressTable.UNRESOLVED) {
+            return addr;
+        }
+        Pass2Assembler.AddressTable chains = chains(kind);
+        int head = chains.get(index);
+        chains.put(index, next);
+        return head == Pass2Assembler.AddressTable.UNRESOLVED ? END_OF_CHAIN : head;
+    }
+
+    /**
+     * Records the address of a symbol or literal and patches every word that
+     * referred to it so far.
+     */
+    void define(int kind, int index, int address) {
+        Pass2Assembler.AddressTable table = table(kind);
+        int old = table.get(index);
+        if (old != Pass2Assembler.AddressTable.UNRESOLVED && old != address) {
+            System.err.println("Warning: " + (kind == Pass2Assembler.SYMBOL ? "symbol (S," : "literal (L,") + index
+                    + ") redefined from " + old + " to " + address + ". Words already written keep " + old + ".");
+        }
+        table.put(index, address);
+
+        Pass2Assembler.AddressTable chains = chains(kind);
+        int word = chains.get(index);
+        if (word == Pass2Assembler.AddressTable.UNRESOLVED) {
+            return;
+        }
+        while (word != END_OF_CHAIN) {
+            int previous = out.operand(word);
+            out.patch(word, address);
+            patched++;
+            word = previous;
+        }
+        chains.put(index, Pass2Assembler.AddressTable.UNRESOLVED);
+    }
+
+    /**
+     * Called after the last record. Anything still parked was never defined:
+     * it is reported like in the two-pass run and gets address 000.
+     */
+    void finish() {
+        finish(Pass2Assembler.SYMBOL);
+        finish(Pass2Assembler.LITERAL);
+    }
+
+    private void finish(int kind) {
+        Pass2Assembler.AddressTable chains = chains(kind);
+        for (int index = 0; index < chains.size; index++) {
+            int word = chains.get(index);
+            if (word == Pass2Assembler.AddressTable.UNRESOLVED) {
+                continue;
+            }
+            while (word != END_OF_CHAIN) {
+                int previous = out.operand(word);
+                Pass2Assembler.reportUnresolved(kind, index, out.lc(word));
+                out.patch(word, 0);
+                word = previous;
+            }
+            chains.put(index, Pass2Assembler.AddressTable.UNRESOLVED);
+        }
+    }
+
+    private Pass2Assembler.AddressTable table(int kind) {
+        return kind == Pass2Assembler.SYMBOL ? symtab : littab;
+    }
+
+    private Pass2Assembler.AddressTable chains(int kind) {
+        return kind == Pass2Assembler.SYMBOL ? symbolChains : literalChains;
+    }
+}
@@ -0,0 +1,406 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Runs assembled programs. The object image (see ObjectImage) is loaded into
+ * an int[] memory and executed from the start address until STOP. Literal
+ * pools are in the image as DC words, so nothing else needs loading.
+ *
+ * The instruction set:
+ *
+ *   00 STOP            05 MOVEM  r, m     mem[m] = r
+ *   01 ADD   r, m      06 COMP   r, m     sets the condition from r - mem[m]
+ *   02 SUB   r, m      07 BC    cc, m     jump to m if cc holds
+ *   03 MULT  r, m      08 DIV    r, m     r = r / mem[m]
+ *   04 MOVER r, m      09 READ      m     mem[m] = next input number
+ *                      10 PRINT     m     prints mem[m]
+ *
+ * with registers 1-4 (AREG-DREG) and condition codes 1-6 (LT, LTE, EQ, GT,
+ * GTE, ANY).
+ *
+ * The plain interpreter decodes each word as it executes it. With
+ * --predecode every word is split into opcode, register and address arrays
+ * up front, and execution goes a basic block at a time: the straight-line
+ * arithmetic runs in a tight loop, and only the instruction that ends the
+ * block (BC, STOP, READ, PRINT) goes through the control-flow code. Block
+ * ends are found on first entry and cached; a store into a word of a cached
+ * block that turns it into or out of a control instruction drops the cache.
+ * Stores into data, which no block covers, leave it alone. The decoded image
+ * and, when no run changed a block boundary, the block ends carry over from
+ * one --repeat run to the next.
+ *
+ *   java Emulator [--predecode] [--input=FILE] [--max-steps=N] [--repeat=N] [image]
+ *
+ * (default ./machinecode.obj, from Pass2Assembler --object)
+ */
+class Emulator {
+
+    static final int STOP = 0, ADD = 1, SUB = 2, MULT = 3, MOVER = 4, MOVEM = 5,
+            COMP = 6, BC = 7, DIV = 8, READ = 9, PRINT = 10;
+    static final int LT = 1, LTE = 2, EQ = 3, GT = 4, GTE = 5, ANY = 6;
+
+    // room past the last loaded word for DS areas at the end of the program
+    static final int SLACK = 1 << 16;
+    static final int UNKNOWN = -1;
+
+    final int[] image;   // memory as loaded, to start each run from
+    final int start;
+    int[] memory;
+    final int[] regs = new int[16];
+    long maxSteps = Long.MAX_VALUE;
+
+    // --predecode
+    byte[] op;
+    byte[] reg;
+    int[] addr;
+    int[] blockEnd;      // block starting at i ends at blockEnd[i], or UNKNOWN
+    boolean[] inBlock;   // word i is part of a cached block
+    boolean blocksValid; // the cached blocks hold for the image as loaded
+    int cmp;             // condition from the last COMP, for runPredecoded()
+    private byte[] loadedOp;
+    private byte[] loadedReg;
+    private int[] loadedAddr;
+
+    DataReader input;
+    Writer output;
+
+    Emulator(ObjectImage obj) {
+        image = new int[obj.end() + SLACK];
+        obj.loadInto(image);
+        start = obj.start;
+    }
+
+    /**
+     * Puts memory and registers back to the loaded state.
+     */
+    void reset(boolean predecode) {
+        memory = image.clone();
+        Arrays.fill(regs, 0);
+        if (!predecode) {
+            return;
+        }
+        int n = memory.length;
+        if (loadedOp == null) {
+            op = new byte[n];
+            reg = new byte[n];
+            addr = new int[n];
+            for (int i = 0; i < n; i++) {
+                decode(i);
+            }
+            loadedOp = op.clone();
+            loadedReg = reg.clone();
+            loadedAddr = addr.clone();
+            blockEnd = new int[n];
+            inBlock = new boolean[n];
+        } else {
+            op = loadedOp.clone();
+            reg = loadedReg.clone();
+            addr = loadedAddr.clone();
+        }
+        if (!blocksValid) {
+            Arrays.fill(blockEnd, UNKNOWN);
+            Arrays.fill(inBlock, false);
+            blocksValid = true;
+        }
+    }
+
+    private void decode(int i) {
+        int w = memory[i];
+        op[i] = (byte) ObjectImage.opcode(w);
+        reg[i] = (byte) ObjectImage.reg(w);
+        addr[i] = ObjectImage.address(w);
+    }
+
+    static boolean taken(int cc, int cmp) {
+        switch (cc) {
+            case LT: return cmp < 0;
+            case LTE: return cmp <= 0;
+            case EQ: return cmp == 0;
+            case GT: return cmp > 0;
+            case GTE: return cmp >= 0;
+            case ANY: return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * Runs from the start address to STOP, decoding as it goes.
+     *
+     * @return The number of instructions executed.
+     */
+    long run() throws IOException {
+        final int[] mem = memory;
+        final int[] r = regs;
+        long steps = 0;
+        int cmp = 0;
+        int pc = start;
+        try {
+            while (true) {
+                int w = mem[pc++];
+                int a = w & ObjectImage.ADDRESS_MASK;
+                steps++;
+                switch (w >>> 28) {
+                    case STOP: return steps;
+                    case ADD: r[(w >>> 24) & 0xf] += mem[a]; break;
+                    case SUB: r[(w >>> 24) & 0xf] -= mem[a]; break;
+                    case MULT: r[(w >>> 24) & 0xf] *= mem[a]; break;
+                    case MOVER: r[(w >>> 24) & 0xf] = mem[a]; break;
+                    case MOVEM: mem[a] = r[(w >>> 24) & 0xf]; break;
+                    case COMP: cmp = Integer.compare(r[(w >>> 24) & 0xf], mem[a]); break;
+                    case BC:
+                        if (taken((w >>> 24) & 0xf, cmp)) {
+                            if (steps > maxSteps) {
+                                throw new IllegalStateException("more than " + maxSteps + " instructions, stopped");
+                            }
+                            pc = a;
+                        }
+                        break;
+                    case DIV:
+                        if (mem[a] == 0) {
+                            throw new IllegalStateException("division by zero");
+                        }
+                        r[(w >>> 24) & 0xf] /= mem[a];
+                        break;
+                    case READ: mem[a] = input.nextInt(); break;
+                    case PRINT: print(mem[a]); break;
+                    default: throw new IllegalStateException("illegal opcode " + (w >>> 28));
+                }
+            }
+        } catch (IllegalStateException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("at LC " + (pc - 1) + ": "
+                    + (e instanceof ArrayIndexOutOfBoundsException ? "address outside memory" : e.getMessage()));
+        }
+    }
+
+    /**
+     * Same as run(), a basic block at a time over the predecoded arrays.
+     */
+    long runPredecoded() throws IOException {
+        final int[] mem = memory;
+        final byte[] op = this.op;
+        final int[] addr = this.addr;
+        long steps = 0;
+        int pc = start;
+        cmp = 0;
+        try {
+            while (true) {
+                int end = blockEnd[pc];
+                if (end == UNKNOWN) {
+                    end = findBlockEnd(pc);
+                }
+                int stopped = straight(pc, end);
+                steps += stopped - pc;
+                pc = stopped;
+                if (stopped < end) {
+                    if (op[stopped] == DIV && mem[addr[stopped]] == 0) {
+                        pc = stopped + 1;
+                        throw new IllegalStateException("division by zero");
+                    }
+                    continue; // a store moved a block boundary
+                }
+                steps++;
+                pc = end + 1;
+                int a = addr[end];
+                switch (op[end]) {
+                    case STOP: return steps;
+                    case BC:
+                        if (taken(reg[end], cmp)) {
+                            if (steps > maxSteps) {
+                                throw new IllegalStateException("more than " + maxSteps + " instructions, stopped");
+                            }
+                            pc = a;
+                        }
+                        break;
+                    case READ:
+                        mem[a] = input.nextInt();
+                        storeChangesBlocks(a);
+                        break;
+                    case PRINT: print(mem[a]); break;
+                    default: throw new IllegalStateException("illegal opcode " + op[end]);
+                }
+            }
+        } catch (IllegalStateException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("at LC " + (pc - 1) + ": "
+                    + (e instanceof ArrayIndexOutOfBoundsException ? "address outside memory" : e.getMessage()));
+        }
+    }
+
+    /**
+     * Runs the straight-line part of a block, from up to end. Kept apart from
+     * runPredecoded() so the JIT compiles this loop on its own.
+     *
+     * @return end, the word after a store that moved a block boundary, or a
+     *         DIV by zero, not executed.
+     */
+    private int straight(int from, int end) {
+        final int[] mem = memory;
+        final int[] r = regs;
+        final byte[] op = this.op;
+        final byte[] reg = this.reg;
+        final int[] addr = this.addr;
+        for (int i = from; i < end; i++) {
+            int a = addr[i];
+            switch (op[i]) {
+                case ADD: r[reg[i]] += mem[a]; break;
+                case SUB: r[reg[i]] -= mem[a]; break;
+                case MULT: r[reg[i]] *= mem[a]; break;
+                case MOVER: r[reg[i]] = mem[a]; break;
+                case COMP: cmp = Integer.compare(r[reg[i]], mem[a]); break;
+                case DIV:
+                    if (mem[a] == 0) {
+                        return i;
+                    }
+                    r[reg[i]] /= mem[a];
+                    break;
+                default: // MOVEM
+                    mem[a] = r[reg[i]];
+                    if (storeChangesBlocks(a)) {
+                        return i + 1;
+                    }
+            }
+        }
+        return end;
+    }
+
+    private static boolean endsBlock(int opcode) {
+        return opcode == STOP || opcode == BC || opcode == READ || opcode == PRINT || opcode > PRINT;
+    }
+
+    private int findBlockEnd(int from) {
+        int i = from;
+        while (!endsBlock(op[i])) {
+            i++; // runs off the end of memory if nothing ends the block
+        }
+        Arrays.fill(inBlock, from, i + 1, true);
+        blockEnd[from] = i;
+        return i;
+    }
+
+    /**
+     * Re-decodes a word just stored to. True if that moved a block boundary,
+     * in which case the cached block ends were dropped.
+     */
+    private boolean storeChangesBlocks(int a) {
+        boolean wasEnd = endsBlock(op[a]);
+        decode(a);
+        if (wasEnd == endsBlock(op[a])) {
+            return false;
+        }
+        blocksValid = false; // blocks found from here on may rely on the new word
+        if (inBlock[a]) {
+            Arrays.fill(blockEnd, UNKNOWN);
+            Arrays.fill(inBlock, false);
+            return true;
+        }
+        return false;
+    }
+
+    private void print(int value) throws IOException {
+        output.write(Integer.toString(value));
+        output.write('\n');
+    }
+
+    /**
+     * Numbers for READ, separated by whitespace. Past the end of the input
+     * READ gets 0.
+     */
+    static class DataReader {
+        private final InputStream in;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos = 0;
+        private int len = 0;
+        int pastEnd = 0;
+
+        DataReader(InputStream in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (pos == len) {
+                len = in.read(buf);
+                pos = 0;
+                if (len <= 0) {
+                    len = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++];
+        }
+
+        int nextInt() throws IOException {
+            int c = read();
+            while (c != -1 && Character.isWhitespace(c)) {
+                c = read();
+            }
+            if (c == -1) {
+                pastEnd++;
+                return 0;
+            }
+            boolean negative = c == '-';
+            if (negative) {
+                c = read();
+            }
+            int value = 0;
+            while (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                c = read();
+            }
+            return negative ? -value : value;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean predecode = false;
+        String imageFile = "./machinecode.obj";
+        String inputFile = null;
+        long maxSteps = Long.MAX_VALUE;
+        int repeat = 1;
+        for (String arg : args) {
+            if (arg.equals("--predecode")) {
+                predecode = true;
+            } else if (arg.startsWith("--input=")) {
+                inputFile = arg.substring("--input=".length());
+            } else if (arg.startsWith("--max-steps=")) {
+                maxSteps = Long.parseLong(arg.substring("--max-steps=".length()));
+            } else if (arg.startsWith("--repeat=")) {
+                repeat = Integer.parseInt(arg.substring("--repeat=".length()));
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            } else {
+                imageFile = arg;
+            }
+        }
+
+        Emulator emu = new Emulator(new ObjectImage(Paths.get(imageFile)));
+        emu.maxSteps = maxSteps;
+        emu.input = new DataReader(inputFile != null
+                ? new BufferedInputStream(new FileInputStream(inputFile)) : System.in);
+        emu.output = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+
+        long steps = 0;
+        long ns = 0;
+        try {
+            for (int i = 0; i < repeat; i++) {
+                emu.reset(predecode);
+                long t = System.nanoTime();
+                steps += predecode ? emu.runPredecoded() : emu.run();
+                ns += System.nanoTime() - t;
+            }
+        } catch (IllegalStateException e) {
+            emu.output.flush();
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        emu.output.flush();
+
+        if (emu.input.pastEnd > 0) {
+            System.err.println("Warning: " + emu.input.pastEnd + " READ(s) past the end of the input got 0.");
+        }
+        System.err.printf("%d instruction(s) in %d run(s), %.1f ms, %.1f M instructions/s%s%n", steps, repeat,
+                ns / 1e6, steps * 1e3 / Math.max(1, ns), predecode ? " (predecoded)" : "");
+        System.err.println("AREG=" + emu.regs[1] + " BREG=" + emu.regs[2] + " CREG=" + emu.regs[3]
+                + " DREG=" + emu.regs[4]);
+    }
+}
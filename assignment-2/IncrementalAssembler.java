@@ -0,0 +1,257 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Keeps an assembled program in memory and, when the source changes,
+ * re-assembles only from the first changed line.
+ *
+ * For every line it remembers the state before that line: the pass 1 state
+ * (see Pass1Assembler.saveState, table sizes plus an undo log) and the pass 2
+ * LC and word index. An update winds pass 1 back to the first changed line,
+ * runs the rest of the source through it, and translates only the IC of those
+ * lines. Words before that point cannot move, but their operands can still
+ * change (a forward reference whose label was edited), so those operands are
+ * re-resolved in place. The listing file is then rewritten only from the
+ * first word that actually differs from the previous run.
+ *
+ *   javac -encoding UTF-8 -sourcepath ../assignment-1a *.java
+ *   java IncrementalAssembler [--watch] [source]   (default ./input.asm)
+ */
+public class IncrementalAssembler {
+
+    static final int S = Pass1Assembler.STATE_SIZE;
+    static final int NO_REF = -1;
+
+    final Path listing;
+    final Pass1Assembler pass1 = new Pass1Assembler();
+    final Pass2Assembler.MachineCode code = new Pass2Assembler.MachineCode();
+
+    String[] lines = new String[0];
+    int[] pass1State = new int[S];   // pass 1 state before line i, for i = 0 .. lines.length
+    int[] pass2State = new int[2];   // pass 2 LC and next word before line i
+    int[] wordRef = new int[1024];   // per word: NO_REF, or index << 1 | 1 for a literal
+    long[] offsets = new long[1025]; // byte offset of each word's line in the listing, then the end
+
+    // what the last update() did
+    int linesRerun;
+    int wordsRewritten;
+
+    /**
+     * Translator that also records which symbol or literal each word refers to.
+     */
+    class Tracker extends Pass2Assembler.Translator {
+        Tracker(int lc, int next) {
+            super(code, lc, next);
+        }
+
+        @Override
+        public void record(int cls, int code, int reg, int kind, int index, int constant) {
+            out.ensureSize(next + 1);
+            if (next >= wordRef.length) {
+                wordRef = Arrays.copyOf(wordRef, wordRef.length * 2);
+            }
+            wordRef[next] = NO_REF;
+            super.record(cls, code, reg, kind, index, constant);
+            out.size = next;
+        }
+
+        @Override
+        int resolve(int kind, int index) {
+            wordRef[next] = index << 1 | (kind == Pass2Assembler.LITERAL ? 1 : 0);
+            return super.resolve(kind, index);
+        }
+    }
+
+    IncrementalAssembler(Path listing) {
+        this.listing = listing;
+        pass1.keepUndoLog();
+        pass1.saveState(pass1State, 0);
+    }
+
+    /**
+     * Brings the machine code and the listing up to date with newLines.
+     *
+     * @return The first line that had to be re-assembled, or -1 if nothing changed.
+     */
+    int update(String[] newLines) throws IOException {
+        int k = 0;
+        int common = Math.min(lines.length, newLines.length);
+        while (k < common && lines[k].equals(newLines[k])) {
+            k++;
+        }
+        linesRerun = 0;
+        wordsRewritten = 0;
+        if (k == lines.length && k == newLines.length) {
+            return -1;
+        }
+
+        // pass 1 from line k
+        pass1.rollback(pass1State, k * S);
+        if ((newLines.length + 1) * S > pass1State.length) {
+            pass1State = Arrays.copyOf(pass1State, (newLines.length + 1) * S);
+            pass2State = Arrays.copyOf(pass2State, (newLines.length + 1) * 2);
+        }
+        for (int j = k; j < newLines.length; j++) {
+            pass1.processLine(newLines[j]);
+            pass1.saveState(pass1State, (j + 1) * S);
+        }
+        lines = newLines;
+        linesRerun = newLines.length - k;
+
+        Pass2Assembler.unresolvedCount = 0;
+        Pass2Assembler.symtab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < pass1.symbolCount(); i++) {
+            int addr = pass1.symbolAddress(i);
+            Pass2Assembler.symtab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+        Pass2Assembler.littab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < pass1.literalCount(); i++) {
+            int addr = pass1.literalAddress(i);
+            Pass2Assembler.littab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+
+        // words before line k keep their place; only their operands can change
+        int startWord = pass2State[2 * k + 1];
+        int firstChanged = Integer.MAX_VALUE;
+        for (int w = 0; w < startWord; w++) {
+            int ref = wordRef[w];
+            if (ref == NO_REF) {
+                continue;
+            }
+            int kind = (ref & 1) == 1 ? Pass2Assembler.LITERAL : Pass2Assembler.SYMBOL;
+            int addr = (kind == Pass2Assembler.SYMBOL ? Pass2Assembler.symtab : Pass2Assembler.littab).get(ref >>> 1);
+            if (addr == Pass2Assembler.AddressTable.UNRESOLVED) {
+                Pass2Assembler.reportUnresolved(kind, ref >>> 1, code.lc(w));
+                addr = 0;
+            }
+            if (addr != code.operand(w)) {
+                code.patch(w, addr);
+                firstChanged = Math.min(firstChanged, w);
+            }
+        }
+
+        // pass 2 from line k
+        int oldSize = code.size;
+        int[] old = Arrays.copyOfRange(code.words, 3 * startWord, 3 * oldSize);
+        Tracker t = new Tracker(pass2State[2 * k], startWord);
+        code.size = startWord;
+        for (int j = k; j < lines.length; j++) {
+            pass2State[2 * j] = t.lc;
+            pass2State[2 * j + 1] = t.next;
+            for (int r = pass1State[j * S + 6]; r < pass1State[(j + 1) * S + 6]; r++) {
+                ICRecord rec = pass1.icRecord(r);
+                t.record(rec.cls, rec.opcode, rec.reg, rec.kind, rec.index, rec.constant);
+            }
+        }
+        pass2State[2 * lines.length] = t.lc;
+        pass2State[2 * lines.length + 1] = t.next;
+
+        int w = startWord;
+        int end = Math.min(oldSize, code.size);
+        while (w < end && w < firstChanged
+                && old[3 * (w - startWord)] == code.words[3 * w]
+                && old[3 * (w - startWord) + 1] == code.words[3 * w + 1]
+                && old[3 * (w - startWord) + 2] == code.words[3 * w + 2]) {
+            w++;
+        }
+        if (w < firstChanged && (w < end || oldSize != code.size)) {
+            firstChanged = w;
+        }
+        if (firstChanged != Integer.MAX_VALUE) {
+            rewriteListing(firstChanged);
+        }
+        return k;
+    }
+
+    /**
+     * Truncates the listing at word first and writes the words from there on.
+     */
+    void rewriteListing(int first) throws IOException {
+        if (code.size + 1 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, code.size + 1));
+        }
+        byte[] newline = System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+        try (FileChannel channel = FileChannel.open(listing, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long pos = offsets[first];
+            channel.truncate(pos);
+            channel.position(pos);
+
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+            StringBuilder sb = new StringBuilder();
+            for (int w = first; w < code.size; w++) {
+                sb.setLength(0);
+                code.format(w, sb);
+                if (buf.remaining() < sb.length() + newline.length) {
+                    buf.flip();
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                    buf.clear();
+                }
+                offsets[w] = pos;
+                for (int i = 0; i < sb.length(); i++) {
+                    buf.put((byte) sb.charAt(i));
+                }
+                buf.put(newline);
+                pos += sb.length() + newline.length;
+            }
+            offsets[code.size] = pos;
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+        wordsRewritten = code.size - first;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // --watch keeps running and re-assembles whenever the source file changes
+        boolean watch = false;
+        String source = "./input.asm";
+        for (String arg : args) {
+            if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            } else {
+                source = arg;
+            }
+        }
+        Path path = Paths.get(source);
+        IncrementalAssembler assembler = new IncrementalAssembler(Paths.get("machinecode.txt"));
+
+        long modified = -1;
+        long size = -1;
+        do {
+            long m = Files.getLastModifiedTime(path).toMillis();
+            long s = Files.size(path);
+            if (m != modified || s != size) {
+                modified = m;
+                size = s;
+                long start = System.nanoTime();
+                String[] lines = Files.readAllLines(path, Charset.defaultCharset()).toArray(new String[0]);
+                int k = assembler.update(lines);
+                long ms = (System.nanoTime() - start) / 1000000;
+                if (k < 0) {
+                    System.out.println("No change.");
+                } else {
+                    System.out.println("Re-assembled from line " + (k + 1) + ": " + assembler.linesRerun
+                            + " line(s) re-run, " + assembler.wordsRewritten + " of " + assembler.code.size
+                            + " word(s) rewritten in machinecode.txt, " + ms + " ms");
+                }
+                if (Pass2Assembler.unresolvedCount > 0) {
+                    System.err.println(Pass2Assembler.unresolvedCount + " operand(s) referred to undefined symbols or literals.");
+                }
+            }
+            if (watch) {
+                Thread.sleep(200);
+            }
+        } while (watch);
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Assembles many source files at once on a thread pool, one Pass1Assembler
+ * and one pass 2 Translator per file, each with its own tables.
+ *
+ * With --link the files are modules of one program: pass 1 of every module
+ * puts its ENTRY symbols into a ConcurrentHashMap shared by all of them, and
+ * once every module is through pass 1 the link step gives each EXTRN symbol
+ * the address exported for it. Pass 2 then runs against the completed
+ * tables, and the module listings are joined into linked.txt (modules are
+ * assembled at absolute addresses, so overlapping modules are reported).
+ *
+ * Each foo.asm gets its listing in foo.mc.txt either way.
+ *
+ *   javac -encoding UTF-8 -sourcepath ../assignment-1a *.java
+ *   java MultiFileAssembler [--link] [--threads=N] file.asm...
+ */
+public class MultiFileAssembler {
+
+    /**
+     * One source file and what has been made of it so far.
+     */
+    static class Module {
+        final Path source;
+        final String name;
+        Pass1Assembler pass1;
+        Pass2Assembler.MachineCode code;
+        int errors;
+
+        Module(Path source) {
+            this.source = source;
+            this.name = source.getFileName().toString();
+        }
+
+        Path listing() {
+            String base = name.endsWith(".asm") ? name.substring(0, name.length() - 4) : name;
+            return source.resolveSibling(base + ".mc.txt");
+        }
+    }
+
+    static void pass1(Module m, ConcurrentMap<String, Integer> namespace) throws IOException {
+        Pass1Assembler assembler = new Pass1Assembler();
+        try (BufferedReader br = Files.newBufferedReader(m.source, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                assembler.processLine(line);
+            }
+        }
+        m.pass1 = assembler;
+        if (namespace != null) {
+            m.errors += assembler.exportEntries(namespace, m.name);
+        }
+    }
+
+    /**
+     * Translates the module's IC against its own tables and writes its listing.
+     */
+    static void pass2(Module m) throws IOException {
+        Pass1Assembler p1 = m.pass1;
+        Pass2Assembler.AddressTable symtab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < p1.symbolCount(); i++) {
+            int addr = p1.symbolAddress(i);
+            symtab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+        Pass2Assembler.AddressTable littab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < p1.literalCount(); i++) {
+            int addr = p1.literalAddress(i);
+            littab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+
+        m.code = new Pass2Assembler.MachineCode();
+        m.code.ensureSize(p1.icSize()); // at most one word per record
+        Pass2Assembler.Translator t = new Pass2Assembler.Translator(m.code, 0, 0);
+        t.symtab = symtab;
+        t.littab = littab;
+        for (int i = 0; i < p1.icSize(); i++) {
+            ICRecord r = p1.icRecord(i);
+            t.record(r.cls, r.opcode, r.reg, r.kind, r.index, r.constant);
+        }
+        m.code.size = t.next;
+
+        try (Writer w = Files.newBufferedWriter(m.listing(), StandardCharsets.ISO_8859_1)) {
+            writeListing(m.code, w);
+        }
+    }
+
+    static void writeListing(Pass2Assembler.MachineCode code, Writer w) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < code.size; i++) {
+            sb.setLength(0);
+            code.format(i, sb);
+            sb.append(System.lineSeparator());
+            w.append(sb);
+        }
+    }
+
+    /**
+     * Runs task on every module and waits for all of them. A module whose
+     * task throws is reported and counted as failed.
+     */
+    static void forEach(List<Module> modules, ExecutorService pool, String phase, ModuleTask task)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Module m : modules) {
+            futures.add(pool.submit(() -> {
+                task.run(m);
+                return null;
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                Module m = modules.get(i);
+                m.errors++;
+                System.err.println("Error: " + m.name + ": " + phase + " failed: " + e.getCause());
+            }
+        }
+    }
+
+    interface ModuleTask {
+        void run(Module m) throws Exception;
+    }
+
+    /**
+     * Joins the module listings, in the order given, into one file and warns
+     * about modules whose address ranges overlap.
+     */
+    static void link(List<Module> modules, Path out) throws IOException {
+        Module[] byStart = modules.stream().filter(m -> m.code != null && m.code.size > 0).toArray(Module[]::new);
+        Arrays.sort(byStart, Comparator.comparingInt(m -> m.code.lc(0)));
+        for (int i = 1; i < byStart.length; i++) {
+            Module prev = byStart[i - 1];
+            int prevEnd = prev.code.lc(prev.code.size - 1);
+            if (byStart[i].code.lc(0) <= prevEnd) {
+                System.err.println("Warning: " + byStart[i].name + " starts at " + byStart[i].code.lc(0)
+                        + ", inside " + prev.name + " (ends at " + prevEnd + ").");
+            }
+        }
+        try (Writer w = Files.newBufferedWriter(out, StandardCharsets.ISO_8859_1)) {
+            for (Module m : modules) {
+                if (m.code != null) {
+                    writeListing(m.code, w);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // --link treats the files as modules of one program (EXTRN/ENTRY) and writes linked.txt
+        // --threads=N sizes the pool (default: one per core)
+        boolean link = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Module> modules = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--link")) {
+                link = true;
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            } else {
+                modules.add(new Module(Paths.get(arg)));
+            }
+        }
+        if (modules.isEmpty()) {
+            System.err.println("Usage: java MultiFileAssembler [--link] [--threads=N] file.asm...");
+            return;
+        }
+
+        ConcurrentMap<String, Integer> namespace = link ? new ConcurrentHashMap<>() : null;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            forEach(modules, pool, "pass 1", m -> pass1(m, namespace));
+            List<Module> assembled = new ArrayList<>();
+            for (Module m : modules) {
+                if (m.pass1 != null) {
+                    if (link) {
+                        m.errors += m.pass1.importExterns(namespace, m.name);
+                    }
+                    assembled.add(m);
+                }
+            }
+            forEach(assembled, pool, "pass 2", MultiFileAssembler::pass2);
+        } finally {
+            pool.shutdown();
+        }
+        if (link) {
+            link(modules, Paths.get("linked.txt"));
+        }
+        long ms = (System.nanoTime() - start) / 1000000;
+
+        int failed = 0;
+        long words = 0;
+        for (Module m : modules) {
+            if (m.errors > 0) {
+                failed++;
+            }
+            if (m.code != null) {
+                words += m.code.size;
+            }
+        }
+        System.out.println("Assembled " + modules.size() + " file(s), " + words + " word(s), on " + threads
+                + " thread(s) in " + ms + " ms" + (link ? "; " + namespace.size() + " ENTRY symbol(s) linked into linked.txt" : ""));
+        if (failed > 0) {
+            System.err.println(failed + " file(s) had errors.");
+        }
+        if (Pass2Assembler.unresolvedCount > 0) {
+            System.err.println(Pass2Assembler.unresolvedCount + " operand(s) referred to undefined symbols or literals.");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Binary object image of the machine code, for a loader that maps the file
+ * instead of parsing machinecode.txt. All ints are big-endian:
+ *
+ *   header   magic "AOBJ", version, start address, segment count, word count
+ *   segment  load address, length n, then n words
+ *
+ * A segment is a run of words at consecutive addresses; ORIGIN and DS leave
+ * gaps between segments, which take no space in the file. Segments are in
+ * program order, so where ORIGIN moved back the later segment overwrites the
+ * earlier one when loaded, as it would in memory.
+ *
+ * An instruction word is opcode << 28 | reg << 24 | address (24 bits); a DC
+ * word is its value as is.
+ */
+class ObjectImage {
+
+    static final int MAGIC = 0x414F424A; // "AOBJ"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+    static final int ADDRESS_BITS = 24;
+    static final int ADDRESS_MASK = (1 << ADDRESS_BITS) - 1;
+
+    static int encode(int opcode, int reg, int address) {
+        return opcode << 28 | reg << 24 | (address & ADDRESS_MASK);
+    }
+
+    static int opcode(int word) { return word >>> 28; }
+    static int reg(int word) { return (word >>> 24) & 0xf; }
+    static int address(int word) { return word & ADDRESS_MASK; }
+
+    /**
+     * Writes code as an object image. The whole image is built in one direct
+     * buffer and handed to the channel in a single write.
+     *
+     * @return The number of segments.
+     */
+    static int write(Pass2Assembler.MachineCode code, Path file) throws IOException {
+        int segments = 0;
+        for (int i = 0; i < code.size; i++) {
+            if (i == 0 || code.lc(i) != code.lc(i - 1) + 1) {
+                segments++;
+            }
+        }
+        long bytes = HEADER_BYTES + 8L * segments + 4L * code.size;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("program too large for an object image: " + code.size + " words");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) bytes);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(code.size > 0 ? code.lc(0) : 0).putInt(segments).putInt(code.size);
+        int lengthAt = -1;
+        int length = 0;
+        for (int i = 0; i < code.size; i++) {
+            if (i == 0 || code.lc(i) != code.lc(i - 1) + 1) {
+                if (lengthAt >= 0) {
+                    buf.putInt(lengthAt, length);
+                }
+                buf.putInt(code.lc(i));
+                lengthAt = buf.position();
+                buf.putInt(0);
+                length = 0;
+            }
+            if (code.isData(i)) {
+                buf.putInt(code.operand(i));
+            } else {
+                int address = code.operand(i);
+                if (address < 0 || address > ADDRESS_MASK) {
+                    throw new IOException("address " + address + " at LC " + code.lc(i) + " does not fit in "
+                            + ADDRESS_BITS + " bits");
+                }
+                buf.putInt(encode(code.opcode(i), code.reg(i), address));
+            }
+            length++;
+        }
+        if (lengthAt >= 0) {
+            buf.putInt(lengthAt, length);
+        }
+        buf.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+        return segments;
+    }
+
+    // --- Reading ---
+
+    final MappedByteBuffer image;
+    final int start;
+    final int segments;
+    final int words;
+
+    /**
+     * Maps an object image written by write().
+     */
+    ObjectImage(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (image.limit() < HEADER_BYTES || image.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not an object image");
+        }
+        if (image.getInt(4) != VERSION) {
+            throw new IOException(file + ": unsupported object image version " + image.getInt(4));
+        }
+        start = image.getInt(8);
+        segments = image.getInt(12);
+        words = image.getInt(16);
+    }
+
+    /**
+     * Highest address loaded plus one, i.e. the memory size the program needs.
+     */
+    int end() {
+        int end = 0;
+        int pos = HEADER_BYTES;
+        for (int s = 0; s < segments; s++) {
+            int length = image.getInt(pos + 4);
+            end = Math.max(end, image.getInt(pos) + length);
+            pos += 8 + 4 * length;
+        }
+        return end;
+    }
+
+    /**
+     * Copies every segment to its load address in memory.
+     */
+    void loadInto(int[] memory) {
+        ByteBuffer view = image.duplicate();
+        view.position(HEADER_BYTES);
+        for (int s = 0; s < segments; s++) {
+            int address = view.getInt();
+            int length = view.getInt();
+            view.asIntBuffer().get(memory, address, length);
+            view.position(view.position() + 4 * length);
+        }
+    }
+
+    /**
+     * Prints an image back as a listing, "LLL) OO R AAA" per word like
+     * machinecode.txt (a DC word shows as opcode 0 with its value).
+     *
+     *   java ObjectImage machinecode.obj
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java ObjectImage file.obj");
+            return;
+        }
+        ObjectImage obj = new ObjectImage(Paths.get(args[0]));
+        System.err.println("start " + obj.start + ", " + obj.segments + " segment(s), " + obj.words + " word(s)");
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        StringBuilder sb = new StringBuilder();
+        int pos = HEADER_BYTES;
+        for (int s = 0; s < obj.segments; s++) {
+            int address = obj.image.getInt(pos);
+            int length = obj.image.getInt(pos + 4);
+            pos += 8;
+            for (int i = 0; i < length; i++, pos += 4) {
+                int word = obj.image.getInt(pos);
+                sb.setLength(0);
+                Pass2Assembler.MachineCode.appendPadded(sb, address + i, 3);
+                sb.append(") ");
+                Pass2Assembler.MachineCode.appendPadded(sb, opcode(word), 2);
+                sb.append(' ').append(reg(word)).append(' ');
+                Pass2Assembler.MachineCode.appendPadded(sb, address(word), 3);
+                out.println(sb);
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Single-pass assembler: reads the source once and writes machine code with
+ * no intermediate file and no second read.
+ *
+ * The front end is the assignment-1a pass 1, so statements are recognised by
+ * the same OpcodeTable (MOT, POT, REG and CC). Its IC records go straight into
+ * a BackpatchTranslator on the same thread; a use of a symbol that is not yet
+ * defined is added to that symbol's chain of incomplete words and patched
+ * when the label turns up. The machine code is byte-identical to the
+ * two-pass path.
+ *
+ * Results are kept in an AssemblyCache (./.asmcache), so assembling a source
+ * that has not changed since an earlier run with the same options only
+ * copies the files back and repeats the errors that run reported.
+ *
+ *   javac -encoding UTF-8 -sourcepath ../assignment-1a *.java
+ *   java OnePassAssembler [--mmap] [--no-cache] [--cache-size=MB] [source]   (default ./input.asm)
+ */
+public class OnePassAssembler {
+
+    /**
+     * Pass 1's IC sink, translating each record as it is produced.
+     */
+    static class TranslatingSink implements ICSink {
+        final BackpatchTranslator pass2;
+
+        TranslatingSink(BackpatchTranslator pass2) {
+            this.pass2 = pass2;
+        }
+
+        public void write(ICRecord r) {
+            pass2.record(r.cls, r.opcode, r.reg, r.kind, r.index, r.constant);
+        }
+
+        public void defineSymbol(int index, int address) {
+            pass2.define(Pass2Assembler.SYMBOL, index, address);
+        }
+
+        public void defineLiteral(int index, int address) {
+            pass2.define(Pass2Assembler.LITERAL, index, address);
+        }
+
+        public void close() {
+            pass2.finish();
+        }
+    }
+
+    static final long DEFAULT_CACHE_MB = 256;
+
+    /**
+     * Copies everything written to it into two streams.
+     */
+    static class Tee extends OutputStream {
+        final OutputStream a;
+        final OutputStream b;
+
+        Tee(OutputStream a, OutputStream b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        public void write(int c) throws IOException {
+            a.write(c);
+            b.write(c);
+        }
+
+        public void write(byte[] buf, int off, int len) throws IOException {
+            a.write(buf, off, len);
+            b.write(buf, off, len);
+        }
+
+        public void flush() throws IOException {
+            a.flush();
+            b.flush();
+        }
+    }
+
+    /**
+     * Assembles filename into Pass2Assembler.machineCode, with assembler
+     * (freshly constructed) holding the pass 1 tables afterwards.
+     *
+     * @return The translator, for its counters.
+     */
+    static BackpatchTranslator assemble(Pass1Assembler assembler, String filename, boolean mmap) throws IOException {
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        BackpatchTranslator pass2 = new BackpatchTranslator();
+
+        assembler.openIntermediateCodeStream(new TranslatingSink(pass2));
+        if (mmap) {
+            MappedSourceReader reader = new MappedSourceReader(filename, assembler.keywords());
+            String[] tokens = new String[8];
+            try {
+                while (reader.nextLine()) {
+                    tokens = reader.tokens(tokens);
+                    assembler.processTokens(tokens, reader.count());
+                }
+            } finally {
+                reader.close();
+            }
+        } else {
+            try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    assembler.processLine(line);
+                }
+            }
+        }
+        assembler.closeIntermediateCodeStream();
+        return pass2;
+    }
+
+    public static void main(String[] args) {
+        // --mmap reads the source through MappedSourceReader instead of BufferedReader
+        // --no-cache always assembles and leaves the cache alone
+        // --cache-size=MB bounds the cache directory (default 256)
+        boolean mmap = false;
+        boolean useCache = true;
+        long cacheMb = DEFAULT_CACHE_MB;
+        String source = "./input.asm";
+        List<String> modes = new ArrayList<>(); // the options that can change the output, part of the cache key
+        for (String arg : args) {
+            if (arg.equals("--mmap")) {
+                mmap = true;
+                modes.add(arg);
+            } else if (arg.equals("--no-cache")) {
+                useCache = false;
+            } else if (arg.startsWith("--cache-size=")) {
+                cacheMb = Long.parseLong(arg.substring("--cache-size=".length()));
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            } else {
+                source = arg;
+            }
+        }
+        List<Path> outputs = Arrays.asList(Paths.get("machinecode.txt"), Paths.get("symtab.txt"),
+                Paths.get("littab.txt"), Paths.get("pooltab.txt"));
+        try {
+            AssemblyCache cache = null;
+            String key = null;
+            if (useCache) {
+                cache = new AssemblyCache(Paths.get(".asmcache"), cacheMb << 20);
+                key = AssemblyCache.key(Paths.get(source), modes);
+                if (cache.restore(key, Paths.get("."), System.err) != null) {
+                    System.out.println("✅ " + source + " unchanged, outputs restored from cache (hits "
+                            + cache.hits + ", misses " + cache.misses + ")");
+                    return;
+                }
+            }
+
+            // whatever the run reports on stderr is stored with the entry, so
+            // that a hit reports it again
+            ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+            PrintStream err = System.err;
+            if (cache != null) {
+                System.setErr(new PrintStream(new Tee(err, diagnostics), true));
+            }
+            BackpatchTranslator pass2;
+            try {
+                Pass1Assembler assembler = new Pass1Assembler();
+                pass2 = assemble(assembler, source, mmap);
+                Pass2Assembler.writeMachineCode("./machinecode.txt");
+                assembler.writeTablesToFile();
+                assembler.writePoolTableToFile();
+                if (Pass2Assembler.unresolvedCount > 0) {
+                    System.err.println(Pass2Assembler.unresolvedCount + " operand(s) referred to undefined symbols or literals.");
+                }
+            } finally {
+                System.err.flush();
+                System.setErr(err);
+            }
+            System.out.println(pass2.patched + " forward reference(s) backpatched.");
+
+            if (cache != null) {
+                cache.store(key, outputs, diagnostics.toByteArray());
+                System.out.println("Cached " + source + " (hits " + cache.hits + ", misses " + cache.misses + ")");
+            }
+        } catch (Exception e) {
+            System.err.println("Error during assembly: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parallel version of pass 2. Translating a record only needs the LC at that
+ * record and the (read-only) symbol and literal tables, so the IC is cut into
+ * fixed-size chunks and handled in three steps:
+ *
+ *   1. scan   - each chunk, in parallel, works out how it moves the LC (either
+ *               relative to its unknown start LC, or absolutely once it hits
+ *               START/ORIGIN) and how many words it emits;
+ *   2. stitch - a sequential walk over the chunk summaries gives every chunk
+ *               its start LC and its first word index;
+ *   3. emit   - each chunk, in parallel, translates its records into its own
+ *               range of Pass2Assembler.machineCode and formats its listing.
+ *
+ * The result is the same machine code, in the same order, as the sequential pass.
+ */
+class ParallelPass2 {
+
+    static final int CHUNK_SIZE = 1 << 15;
+
+    static class Chunk {
+        final int from, to;   // record range [from, to)
+        boolean lcSet;        // chunk contains START/ORIGIN
+        int lcEnd;            // LC after the chunk: absolute if lcSet, else relative to startLc
+        int words;
+        int startLc;
+        int startWord;
+        byte[] listing;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Runs step 1 or step 3 over chunks [lo, hi), splitting the range in half
+     * until one chunk is left.
+     */
+    static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Pass2Assembler.ICBuffer ic;
+        final List<Chunk> chunks;
+        final int lo, hi;
+        final boolean emit;
+
+        ChunkTask(Pass2Assembler.ICBuffer ic, List<Chunk> chunks, int lo, int hi, boolean emit) {
+            this.ic = ic;
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+            this.emit = emit;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ChunkTask(ic, chunks, lo, mid, emit), new ChunkTask(ic, chunks, mid, hi, emit));
+                return;
+            }
+            Chunk c = chunks.get(lo);
+            if (!emit) {
+                Pass2Assembler.Translator t = new Pass2Assembler.Translator(null, 0, 0);
+                ic.replay(c.from, c.to, t);
+                c.lcSet = t.lcSet;
+                c.lcEnd = t.lc;
+                c.words = t.next;
+            } else {
+                Pass2Assembler.MachineCode out = Pass2Assembler.machineCode;
+                Pass2Assembler.Translator t = new Pass2Assembler.Translator(out, c.startLc, c.startWord);
+                ic.replay(c.from, c.to, t);
+
+                StringBuilder sb = new StringBuilder(c.words * 16);
+                for (int i = c.startWord; i < c.startWord + c.words; i++) {
+                    out.format(i, sb);
+                    sb.append(System.lineSeparator());
+                }
+                c.listing = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+            }
+        }
+    }
+
+    /**
+     * Translates the whole IC into Pass2Assembler.machineCode using pool.
+     *
+     * @return The chunks in order, each holding its formatted listing.
+     */
+    static List<Chunk> translate(Pass2Assembler.ICBuffer ic, ForkJoinPool pool) {
+        List<Chunk> chunks = new ArrayList<>();
+        for (int from = 0; from < ic.size; from += CHUNK_SIZE) {
+            chunks.add(new Chunk(from, Math.min(from + CHUNK_SIZE, ic.size)));
+        }
+        if (chunks.isEmpty()) {
+            return chunks;
+        }
+
+        pool.invoke(new ChunkTask(ic, chunks, 0, chunks.size(), false));
+
+        int lc = 0;
+        int words = 0;
+        for (Chunk c : chunks) {
+            c.startLc = lc;
+            c.startWord = words;
+            lc = c.lcSet ? c.lcEnd : lc + c.lcEnd;
+            words += c.words;
+        }
+
+        Pass2Assembler.machineCode.ensureSize(words);
+        Pass2Assembler.machineCode.size = words;
+        pool.invoke(new ChunkTask(ic, chunks, 0, chunks.size(), true));
+        return chunks;
+    }
+
+    /**
+     * Writes the chunk listings to filename in order and, unless
+     * Pass2Assembler.quiet, echoes them to the console the way
+     * Pass2Assembler.writeMachineCode does.
+     */
+    static void writeChunks(List<Chunk> chunks, String filename) throws IOException {
+        boolean echo = !Pass2Assembler.quiet;
+        if (echo) {
+            System.out.println("\n--- FINAL MACHINE CODE ---");
+        }
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16)) {
+            for (Chunk c : chunks) {
+                os.write(c.listing);
+                if (echo) {
+                    System.out.write(c.listing, 0, c.listing.length);
+                }
+            }
+        }
+        if (echo) {
+            System.out.println("--------------------------");
+        }
+        System.out.println("✅ Machine code written to " + filename);
+    }
+}
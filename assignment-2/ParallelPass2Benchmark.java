@@ -0,0 +1,85 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the sequential pass 2 with ParallelPass2 on a synthetic IC of
+ * several million records (translation plus formatting of the listing), for
+ * ForkJoinPools of 1, 2, 4, ... up to the number of available cores, and
+ * checks that both produce the same machine code.
+ *
+ *   javac -encoding UTF-8 *.java && java -Xmx4g ParallelPass2Benchmark [records]
+ */
+public class ParallelPass2Benchmark {
+
+    static Pass2Assembler.ICBuffer generate(int records, int symbols) {
+        Pass2Assembler.ICBuffer ic = new Pass2Assembler.ICBuffer();
+        ic.record(Pass2Assembler.AD, 1, Pass2Assembler.NO_REG, Pass2Assembler.CONSTANT, 0, 100);
+        Random rnd = new Random(42);
+        for (int i = 0; i < records; i++) {
+            if (i % 1000 == 999) {
+                ic.record(Pass2Assembler.DL, 1, Pass2Assembler.NO_REG, Pass2Assembler.CONSTANT, 0, 4); // DS 4
+            } else if (i % 250000 == 249999) {
+                ic.record(Pass2Assembler.AD, 3, Pass2Assembler.NO_REG, Pass2Assembler.SYMBOL, rnd.nextInt(symbols), 7);
+            } else {
+                int kind = i % 3 == 0 ? Pass2Assembler.LITERAL : Pass2Assembler.SYMBOL;
+                ic.record(Pass2Assembler.IS, 1 + rnd.nextInt(10), 1 + rnd.nextInt(4), kind, rnd.nextInt(symbols), 0);
+            }
+        }
+        ic.record(Pass2Assembler.AD, 2, Pass2Assembler.NO_REG, Pass2Assembler.NONE, 0, 0);
+        for (int i = 0; i < symbols; i++) {
+            Pass2Assembler.symtab.put(i, 100 + i);
+            Pass2Assembler.littab.put(i, 200 + i);
+        }
+        return ic;
+    }
+
+    static long sequential(Pass2Assembler.ICBuffer ic) {
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        Pass2Assembler.pass = new Pass2Assembler.SequentialTranslator();
+        long start = System.nanoTime();
+        ic.replay(0, ic.size, Pass2Assembler.pass);
+        StringBuilder sb = new StringBuilder();
+        long bytes = 0;
+        for (int i = 0; i < Pass2Assembler.machineCode.size; i++) {
+            sb.setLength(0);
+            Pass2Assembler.machineCode.format(i, sb);
+            sb.append(System.lineSeparator());
+            bytes += sb.toString().getBytes().length;
+        }
+        if (bytes == 0) System.out.println();
+        return System.nanoTime() - start;
+    }
+
+    static long parallel(Pass2Assembler.ICBuffer ic, ForkJoinPool pool) {
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        long start = System.nanoTime();
+        ParallelPass2.translate(ic, pool);
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 4000000;
+        Pass2Assembler.ICBuffer ic = generate(records, 50000);
+
+        for (int i = 0; i < 3; i++) sequential(ic);
+        long seq = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) seq = Math.min(seq, sequential(ic));
+        Pass2Assembler.MachineCode expected = Pass2Assembler.machineCode;
+        System.out.printf("sequential          %6d ms%n", seq / 1000000);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= Math.max(cores, 1); threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for (int i = 0; i < 3; i++) parallel(ic, pool);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) best = Math.min(best, parallel(ic, pool));
+            pool.shutdown();
+
+            Pass2Assembler.MachineCode got = Pass2Assembler.machineCode;
+            boolean same = got.size == expected.size
+                    && Arrays.equals(Arrays.copyOf(got.words, 3 * got.size), Arrays.copyOf(expected.words, 3 * expected.size));
+            System.out.printf("parallel, %2d threads %6d ms  speedup %.2fx  %s%n",
+                    threads, best / 1000000, (double) seq / best, same ? "output matches" : "OUTPUT DIFFERS");
+        }
+    }
+}
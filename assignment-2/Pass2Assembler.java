@@ -1,27 +1,415 @@
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class Pass2Assembler {
-    // Map to store: symbol_index -> address
-    static Map<Integer, Integer> symtab = new HashMap<>();
-    // Map to store: literal_index -> address
-    static Map<Integer, Integer> littab = new HashMap<>();
-    // List to store the final generated machine code lines
-    static List<String> machineCode = new ArrayList<>();
+
+    /**
+     * Address table indexed by the dense, zero-based SYMTAB/LITTAB index used in
+     * the IC. Backed by a growable int[]; slots that were never loaded hold
+     * UNRESOLVED instead of silently reading as address 0.
+     */
+    static class AddressTable {
+        static final int UNRESOLVED = Integer.MIN_VALUE;
+
+        int[] addr = new int[64];
+        int size = 0;
+
+        AddressTable() {
+            Arrays.fill(addr, UNRESOLVED);
+        }
+
+        void put(int index, int address) {
+            if (index >= addr.length) {
+                int old = addr.length;
+                addr = Arrays.copyOf(addr, Math.max(old * 2, index + 1));
+                Arrays.fill(addr, old, addr.length, UNRESOLVED);
+            }
+            addr[index] = address;
+            size = Math.max(size, index + 1);
+        }
+
+        int get(int index) {
+            return index >= 0 && index < addr.length ? addr[index] : UNRESOLVED;
+        }
+    }
+
+    /**
+     * Generated machine code as packed ints, three per word: LC, opcode << 8 | reg
+     * (DATA for a DC word), and the address (or the constant for DC). Formatted
+     * only when written out.
+     */
+    static class MachineCode {
+        static final int DATA = 1 << 16;
+
+        int[] words = new int[3 * 1024];
+        int size = 0; // number of words
+
+        void add(int lc, int opcode, int reg, int operand) {
+            ensureSize(size + 1);
+            set(size++, lc, opcode, reg, operand);
+        }
+
+        /**
+         * Makes room for n words without changing size. Used before parallel
+         * translation, where each chunk writes its own range with set().
+         */
+        void ensureSize(int n) {
+            if (3 * n > words.length) {
+                words = Arrays.copyOf(words, Math.max(words.length * 2, 3 * n));
+            }
+        }
+
+        void set(int n, int lc, int opcode, int reg, int operand) {
+            int i = 3 * n;
+            words[i] = lc;
+            words[i + 1] = (opcode << 8) | reg;
+            words[i + 2] = operand;
+        }
+
+        /**
+         * A DC word: listed like an instruction with opcode 0, but its
+         * operand is a value, not an address.
+         */
+        void setData(int n, int lc, int value) {
+            set(n, lc, 0, 0, value);
+            words[3 * n + 1] = DATA;
+        }
+
+        /**
+         * Overwrites the address of word n, for operands filled in after the word was written.
+         */
+        void patch(int n, int operand) {
+            words[3 * n + 2] = operand;
+        }
+
+        int lc(int n) { return words[3 * n]; }
+        int opcode(int n) { return (words[3 * n + 1] >>> 8) & 0xff; }
+        int reg(int n) { return words[3 * n + 1] & 0xff; }
+        int operand(int n) { return words[3 * n + 2]; }
+        boolean isData(int n) { return (words[3 * n + 1] & DATA) != 0; }
+
+        /**
+         * Appends word n in the "LLL) OO R AAA" listing format.
+         */
+        void format(int n, StringBuilder sb) {
+            appendPadded(sb, lc(n), 3);
+            sb.append(") ");
+            appendPadded(sb, opcode(n), 2);
+            sb.append(' ').append(reg(n)).append(' ');
+            appendPadded(sb, operand(n), 3);
+        }
+
+        /**
+         * Same result as String.format("%0" + width + "d", value).
+         */
+        static void appendPadded(StringBuilder sb, int value, int width) {
+            if (value < 0) {
+                sb.append('-');
+                value = -value;
+                width--;
+            }
+            int digits = 1;
+            for (int v = value; v >= 10; v /= 10) digits++;
+            for (int i = digits; i < width; i++) sb.append('0');
+            sb.append(value);
+        }
+    }
+
+    // symbol_index -> address
+    static AddressTable symtab = new AddressTable();
+    // literal_index -> address
+    static AddressTable littab = new AddressTable();
+    // The final generated machine code
+    static MachineCode machineCode = new MachineCode();
+    // Operands that referred to an undefined symbol or literal
+    static int unresolvedCount = 0;
+    // Changes whenever the same IC starts translating to different machine
+    // code; cached assemblies are keyed on it (2: DS and DC the way round
+    // pass 1 numbers them, literal pools in the IC)
+    static final int TRANSLATION_VERSION = 2;
+
+    /**
+     * Receives one decoded IC record, from either the text or the binary reader.
+     */
+    interface RecordHandler {
+        void record(int cls, int code, int reg, int kind, int index, int constant);
+    }
+
+    /**
+     * Turns decoded IC records into machine code words and tracks the LC. The
+     * normal pass runs one Translator over the whole IC. Parallel mode runs one
+     * per chunk: first with no output just to find how the chunk moves the LC
+     * and how many words it produces, then again writing its own slice of the
+     * shared MachineCode.
+     */
+    static class Translator implements RecordHandler {
+        int lc;               // Location Counter
+        boolean lcSet;        // whether START/ORIGIN has set the LC absolutely
+        final MachineCode out; // null when only counting
+        int next;             // index of the next word written to out
+        // tables operands are resolved against; the shared ones unless a
+        // caller translating several programs at once gives each its own
+        AddressTable symtab = Pass2Assembler.symtab;
+        AddressTable littab = Pass2Assembler.littab;
+
+        Translator(MachineCode out, int lc, int next) {
+            this.out = out;
+            this.lc = lc;
+            this.next = next;
+        }
+
+        public void record(int cls, int code, int reg, int kind, int index, int constant) {
+            if (cls == AD) {
+                // --- Assembler Directives ---
+                if (code == 1) { // START
+                    if (kind == CONSTANT) {
+                        lc = constant;
+                        lcSet = true;
+                    } else if (out != null) {
+                        System.err.println("Warning: START directive (AD,01) found without address. Assuming LC=0.");
+                    }
+                }
+                // --- START FIX: Handle ORIGIN ---
+                else if (code == 3) { // ORIGIN
+                    if (kind == CONSTANT) {
+                        lc = constant;
+                        lcSet = true;
+                    } else if (kind == SYMBOL) {
+                        int addr = symtab.get(index);
+                        if (addr == AddressTable.UNRESOLVED) {
+                            if (out != null) {
+                                System.err.println("Error parsing ORIGIN directive: undefined symbol (S," + index + ")");
+                            }
+                        } else {
+                            lc = addr + constant; // Set the location counter
+                            lcSet = true;
+                        }
+                    }
+                }
+                // --- END FIX ---
+                // END (02), LTORG (04), EQU (05) do not generate machine code in Pass 2.
+
+            } else if (cls == DL) {
+                // --- Declarative Statements ---
+                if (kind != CONSTANT) {
+                    if (out != null) {
+                        System.err.println("Warning: Malformed DL statement. Skipping: (DL," + code + ")");
+                    }
+                    return;
+                }
+                int value = constant;
+
+                // numbered as both pass 1s number them: (DL,01) DS, (DL,02) DC
+                if (code == 1) { // DS (Declare Storage)
+                    lc += value;
+                } else if (code == 2) { // DC (Define Constant)
+                    if (out != null) {
+                        out.setData(next, lc, value);
+                    }
+                    next++;
+                    lc++;
+                }
+
+            } else if (cls == IS) {
+                // --- Imperative Statements ---
+                if (out != null) {
+                    int opcode = code;
+                    int regCode = reg == NO_REG ? 0 : reg;
+                    int memAddr = 0;
+
+                    if (kind == SYMBOL || kind == LITERAL) {
+                        memAddr = resolve(kind, index);
+                    }
+
+                    out.set(next, lc, opcode, regCode, memAddr);
+                }
+                next++;
+                lc++;
+            }
+        }
+
+        /**
+         * Address for a symbol or literal operand of the word about to be
+         * written at next. The tables are complete before this pass starts, so
+         * a missing address is an error and 0 is used.
+         */
+        int resolve(int kind, int index) {
+            int addr = (kind == SYMBOL ? symtab : littab).get(index);
+            if (addr == AddressTable.UNRESOLVED) {
+                reportUnresolved(kind, index, lc);
+                return 0;
+            }
+            return addr;
+        }
+    }
+
+    /**
+     * The normal, sequential pass over the IC.
+     */
+    static class SequentialTranslator extends Translator {
+        SequentialTranslator() {
+            super(machineCode, 0, 0);
+        }
+
+        @Override
+        public void record(int cls, int code, int reg, int kind, int index, int constant) {
+            out.ensureSize(next + 1);
+            super.record(cls, code, reg, kind, index, constant);
+            out.size = next;
+        }
+    }
+
+    static Translator pass = new SequentialTranslator();
+
+    // Pass 2's phases for --metrics. The timing is done by AssemblerMetrics
+    // from assignment-1a, with IC records as the unit, so like the rest of
+    // this folder pass 2 is compiled with -sourcepath ../assignment-1a.
+    static final int LOAD = 0, PARSE = 1, TRANSLATE = 2, WRITE = 3;
+    static final String[] PHASES = {"loadTables", "readIC", "translate", "writeListing"};
+
+    /**
+     * Charges the handler's work to TRANSLATE and the reading and decoding
+     * around it to PARSE.
+     */
+    static class MeteredHandler implements RecordHandler {
+        final RecordHandler target;
+        final AssemblerMetrics metrics;
+
+        MeteredHandler(RecordHandler target, AssemblerMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        public void record(int cls, int code, int reg, int kind, int index, int constant) {
+            metrics.enter(TRANSLATE);
+            target.record(cls, code, reg, kind, index, constant);
+            metrics.count++;
+            metrics.enter(PARSE);
+        }
+    }
+
+    // no echo of the listing while writing it
+    static boolean quiet = false;
+
+    /**
+     * The whole IC held as parallel int arrays, one slot per record, so it can
+     * be split into chunks and replayed into any RecordHandler.
+     */
+    static class ICBuffer implements RecordHandler {
+        int[] cls = new int[1024], code = new int[1024], reg = new int[1024];
+        int[] kind = new int[1024], index = new int[1024], constant = new int[1024];
+        int size = 0;
+
+        public void record(int cls, int code, int reg, int kind, int index, int constant) {
+            if (size == this.cls.length) {
+                int n = size * 2;
+                this.cls = Arrays.copyOf(this.cls, n);
+                this.code = Arrays.copyOf(this.code, n);
+                this.reg = Arrays.copyOf(this.reg, n);
+                this.kind = Arrays.copyOf(this.kind, n);
+                this.index = Arrays.copyOf(this.index, n);
+                this.constant = Arrays.copyOf(this.constant, n);
+            }
+            this.cls[size] = cls;
+            this.code[size] = code;
+            this.reg[size] = reg;
+            this.kind[size] = kind;
+            this.index[size] = index;
+            this.constant[size] = constant;
+            size++;
+        }
+
+        void replay(int from, int to, RecordHandler handler) {
+            for (int i = from; i < to; i++) {
+                handler.record(cls[i], code[i], reg[i], kind[i], index[i], constant[i]);
+            }
+        }
+    }
 
     public static void main(String[] args) {
+        // --binary reads the binary IC written by Pass1Assembler --binary
+        // --parallel translates chunks of the IC on a ForkJoinPool
+        // --echo also prints the machine code to the console (--quiet, not
+        //   echoing it, is the default)
+        // --object also writes machinecode.obj, a binary object image (see ObjectImage)
+        // --metrics prints a JSON summary of where the time went and registers it with JMX
+        boolean binary = false;
+        boolean parallel = false;
+        boolean object = false;
+        AssemblerMetrics metrics = null;
+        quiet = true;
+        for (String arg : args) {
+            if (arg.equals("--binary")) {
+                binary = true;
+            } else if (arg.equals("--parallel")) {
+                parallel = true;
+            } else if (arg.equals("--echo")) {
+                quiet = false;
+            } else if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.equals("--object")) {
+                object = true;
+            } else if (arg.equals("--metrics")) {
+                metrics = new AssemblerMetrics("records", PHASES);
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (metrics != null) {
+            metrics.register("Pass2");
+        }
         try {
             // Step 1: Load the tables generated by Pass 1
+            if (metrics != null) metrics.enter(LOAD);
             loadSymbolTable("./symtab.txt");
             loadLiteralTable("./littab.txt");
 
             // Step 2: Process the intermediate code using the loaded tables
-            processIC("./intermediate_code.txt");
+            RecordHandler handler = pass;
+            ICBuffer ic = null;
+            if (parallel) {
+                handler = ic = new ICBuffer();
+            }
+            if (metrics != null) {
+                handler = new MeteredHandler(handler, metrics);
+                metrics.enter(PARSE);
+            }
+            if (binary) {
+                processBinaryIC("./IntermediateCode.bin", handler);
+            } else {
+                processIC("./intermediate_code.txt", handler);
+            }
 
             // Step 3: Write the final machine code to a file and display it
-            writeMachineCode("./machinecode.txt");
+            if (parallel) {
+                // the parallel pass translates and formats together, counted as writing
+                if (metrics != null) metrics.enter(WRITE);
+                ParallelPass2.writeChunks(ParallelPass2.translate(ic, ForkJoinPool.commonPool()), "./machinecode.txt");
+            } else {
+                if (metrics != null) metrics.enter(WRITE);
+                writeMachineCode("./machinecode.txt");
+            }
+            if (object) {
+                int segments = ObjectImage.write(machineCode, Paths.get("./machinecode.obj"));
+                System.out.println("✅ Object image (" + segments + " segment(s)) written to ./machinecode.obj");
+            }
+            if (unresolvedCount > 0) {
+                System.err.println(unresolvedCount + " operand(s) referred to undefined symbols or literals.");
+            }
+            if (metrics != null) {
+                metrics.enter(AssemblerMetrics.NONE);
+                metrics.table("symtab", symtab.size);
+                metrics.table("littab", littab.size);
+                metrics.table("words", machineCode.size);
+                System.out.println(metrics.getJsonSummary());
+            }
 
         } catch (Exception e) {
             System.err.println("Error during Pass 2 execution: " + e.getMessage());
@@ -30,7 +418,8 @@ public class Pass2Assembler {
     }
 
     /**
-     * Reads symtab.txt and loads the symbol index and its address into the symtab map.
+     * Reads symtab.txt and loads the symbol index and its address into the symtab table.
+     * Pass 1 writes a negative address for a symbol that was never defined.
      * Expected format: index [symbol_name] address
      */
     static void loadSymbolTable(String filename) throws IOException {
@@ -43,7 +432,7 @@ public class Pass2Assembler {
             if (parts.length >= 2) { 
                 int index = Integer.parseInt(parts[0]);
                 int addr = Integer.parseInt(parts[parts.length - 1]); // Get last part
-                symtab.put(index, addr);
+                symtab.put(index, addr < 0 ? AddressTable.UNRESOLVED : addr);
             }
             // --- END FIX ---
         }
@@ -52,7 +441,7 @@ public class Pass2Assembler {
     }
 
     /**
-     * Reads littab.txt and loads the literal index and its address into the littab map.
+     * Reads littab.txt and loads the literal index and its address into the littab table.
      * Expected format: index [literal_value] address
      */
     static void loadLiteralTable(String filename) throws IOException {
@@ -64,7 +453,7 @@ public class Pass2Assembler {
             if (parts.length >= 2) { 
                 int index = Integer.parseInt(parts[0]);
                 int addr = Integer.parseInt(parts[parts.length - 1]); // Get last part
-                littab.put(index, addr);
+                littab.put(index, addr < 0 ? AddressTable.UNRESOLVED : addr);
             }
             // --- END FIX ---
         }
@@ -72,13 +461,28 @@ public class Pass2Assembler {
         System.out.println("✅ Literal Table loaded successfully.");
     }
 
+    // Operand classes and kinds of a decoded IC record; same numbering as the
+    // binary IC written by Pass1Assembler --binary.
+    static final int IS = 0, AD = 1, DL = 2;
+    static final int NONE = 0, SYMBOL = 1, LITERAL = 2, CONSTANT = 3;
+    static final int NO_REG = -1;
+
+    static final int BINARY_IC_MAGIC = 0x49434231; // "ICB1"
+    static final int BINARY_IC_RECORD_SIZE = 12;
+
     /**
      * Reads ic.txt, processes each line, and generates the corresponding machine code.
      */
     static void processIC(String filename) throws IOException {
+        processIC(filename, pass);
+    }
+
+    /**
+     * Reads text IC and hands each decoded record to handler.
+     */
+    static void processIC(String filename, RecordHandler handler) throws IOException {
         BufferedReader br = new BufferedReader(new FileReader(filename));
         String line;
-        int lc = 0; // Location Counter
 
         while ((line = br.readLine()) != null) {
             line = line.trim();
@@ -95,103 +499,127 @@ public class Pass2Assembler {
             String[] firstPart = tokens[0].split(",");
             String type = firstPart[0].trim(); 
             int code = Integer.parseInt(firstPart[1].trim()); 
-
-            if (type.equals("AD")) {
-                // --- Assembler Directives ---
-                if (code == 1) { // START
-                    if (tokens.length > 1) {
-                        lc = Integer.parseInt(tokens[1].split(",")[1].trim()); 
-                    } else {
-                        System.err.println("Warning: START directive (AD,01) found without address. Assuming LC=0.");
-                    }
-                }
-                // --- START FIX: Handle ORIGIN ---
-                else if (code == 3) { // ORIGIN
-                    if (tokens.length > 1) {
-                        String operand = tokens[1].trim(); // e.g., "S,02+2"
-                        int newLc = 0;
-                        try {
-                            if (operand.contains("+")) {
-                                String[] parts = operand.split("\\+");
-                                String symbolPart = parts[0]; // "S,02"
-                                int constant = Integer.parseInt(parts[1]); // "2"
-                                int symIndex = Integer.parseInt(symbolPart.split(",")[1]); // 2
-                                newLc = symtab.get(symIndex) + constant;
-                            } else if (operand.contains("-")) {
-                                String[] parts = operand.split("-");
-                                String symbolPart = parts[0]; // "S,02"
-                                int constant = Integer.parseInt(parts[1]); // "2"
-                                int symIndex = Integer.parseInt(symbolPart.split(",")[1]); // 2
-                                newLc = symtab.get(symIndex) - constant;
-                            } else {
-                                // Assume it's just a symbol, e.g., "S,02"
-                                int symIndex = Integer.parseInt(operand.split(",")[1]); // 2
-                                newLc = symtab.get(symIndex);
-                            }
-                            lc = newLc; // Set the location counter
-                        } catch (Exception e) {
-                            System.err.println("Error parsing ORIGIN directive: " + line);
-                        }
-                    }
-                }
-                // --- END FIX ---
-                // END (02), LTORG (04), EQU (05) do not generate machine code in Pass 2.
+            int cls = type.equals("IS") ? IS : type.equals("AD") ? AD : type.equals("DL") ? DL : -1;
+            if (cls == -1) {
+                System.err.println("Warning: Unknown statement class. Skipping: " + line);
                 continue;
+            }
 
-            } else if (type.equals("DL")) {
-                // --- Declarative Statements ---
-                if (tokens.length < 2) {
-                    System.err.println("Warning: Malformed DL statement. Skipping: " + line);
-                    continue;
-                }
-                
-                String valueStr = tokens[1].split(",")[1].trim().replaceAll("'", ""); 
-                int value = Integer.parseInt(valueStr);
-
-                if (code == 2) { // DS (Declare Storage)
-                    lc += value;
-                } else if (code == 1) { // DC (Define Constant)
-                    String mcode = String.format("%03d) 00 0 %03d", lc, value);
-                    machineCode.add(mcode);
-                    lc++;
-                }
-
-            } else if (type.equals("IS")) {
-                // --- Imperative Statements ---
-                int opcode = code;
-                int regCode = 0;
-                int memAddr = 0;
+            int reg = NO_REG;
+            int kind = NONE;
+            int index = 0;
+            int constant = 0;
 
-                for (int i = 1; i < tokens.length; i++) {
-                    String[] part = tokens[i].split(",");
+            for (int i = 1; i < tokens.length; i++) {
+                String[] part = tokens[i].split(",");
 
-                    if (part.length == 2) { // e.g., (S, 2)
-                        String operandType = part[0].trim();
-                        int operandVal = Integer.parseInt(part[1].trim());
+                if (part.length == 2) { // e.g., (S, 2), (C, 5) or (S,02)+2
+                    String operandType = part[0].trim();
+                    String operandStr = part[1].trim().replaceAll("'", "");
+                    int offset = 0;
+                    try {
+                        int sign = Math.max(operandStr.indexOf('+'), operandStr.indexOf('-', 1));
+                        if (sign > 0) {
+                            offset = Integer.parseInt(operandStr.substring(sign).replace("+", ""));
+                            operandStr = operandStr.substring(0, sign);
+                        }
+                        int operandVal = Integer.parseInt(operandStr.trim());
 
                         if (operandType.equals("R") || operandType.equals("CC")) {
-                            regCode = operandVal;
+                            reg = operandVal;
                         } else if (operandType.equals("S")) {
-                            memAddr = symtab.getOrDefault(operandVal, 0); 
+                            kind = SYMBOL;
+                            index = operandVal;
+                            constant = offset;
                         } else if (operandType.equals("L")) {
-                            memAddr = littab.getOrDefault(operandVal, 0); 
-                        }
-                    } else if (part.length == 1) { // e.g., (1)
-                        try {
-                            regCode = Integer.parseInt(part[0].trim());
-                        } catch (NumberFormatException e) {
-                            System.err.println("Warning: Skipping unparseable operand token: " + tokens[i]);
+                            kind = LITERAL;
+                            index = operandVal;
+                        } else if (operandType.equals("C")) {
+                            kind = CONSTANT;
+                            constant = operandVal;
                         }
+                    } catch (NumberFormatException e) {
+                        System.err.println("Warning: Skipping unparseable operand token: " + tokens[i]);
+                    }
+                } else if (part.length == 1) { // e.g., (1)
+                    try {
+                        reg = Integer.parseInt(part[0].trim());
+                    } catch (NumberFormatException e) {
+                        System.err.println("Warning: Skipping unparseable operand token: " + tokens[i]);
                     }
                 }
-
-                String mcode = String.format("%03d) %02d %d %03d", lc, opcode, regCode, memAddr);
-                machineCode.add(mcode);
-                lc++;
             }
+
+            handler.record(cls, code, reg, kind, index, constant);
         }
         br.close();
-        System.out.println("✅ Intermediate Code processed.");
+        if (!quiet) {
+            System.out.println("✅ Intermediate Code processed.");
+        }
+    }
+
+    /**
+     * Reads the binary IC written by Pass1Assembler --binary. Records are fixed
+     * width, so they are decoded straight out of the buffer with no parsing.
+     */
+    static void processBinaryIC(String filename) throws IOException {
+        processBinaryIC(filename, pass);
+    }
+
+    /**
+     * Reads binary IC and hands each record to handler.
+     */
+    static void processBinaryIC(String filename, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BINARY_IC_RECORD_SIZE * 4096);
+            buf.limit(4);
+            while (buf.hasRemaining() && channel.read(buf) != -1) { }
+            buf.flip();
+            if (buf.remaining() < 4 || buf.getInt() != BINARY_IC_MAGIC) {
+                throw new IOException(filename + " is not a binary IC file");
+            }
+            buf.clear();
+
+            while (channel.read(buf) != -1 || buf.position() > 0) {
+                buf.flip();
+                if (buf.remaining() < BINARY_IC_RECORD_SIZE) {
+                    if (buf.remaining() > 0) {
+                        throw new IOException("Truncated record at end of " + filename);
+                    }
+                    break;
+                }
+                while (buf.remaining() >= BINARY_IC_RECORD_SIZE) {
+                    int cls = buf.get();
+                    int code = buf.get();
+                    int reg = buf.get();
+                    int kind = buf.get();
+                    int index = buf.getInt();
+                    int constant = buf.getInt();
+                    handler.record(cls, code, reg, kind, index, constant);
+                }
+                buf.compact();
+            }
+        }
+        if (!quiet) {
+            System.out.println("✅ Binary Intermediate Code processed.");
+        }
+    }
+
+    /**
+     * Generates machine code for one decoded IC record and advances the LC.
+     */
+    static void translate(int cls, int code, int reg, int kind, int index, int constant) {
+        pass.record(cls, code, reg, kind, index, constant);
+    }
+
+    /**
+     * Reports an operand whose address pass 1 never assigned. Kept out of
+     * translate() so the common path stays allocation-free.
+     */
+    static synchronized void reportUnresolved(int kind, int index, int lc) {
+        unresolvedCount++;
+        System.err.println("Error: " + (kind == SYMBOL ? "symbol (S," : "literal (L,") + index
+                + ") used at LC " + lc + " has no address. Using 000.");
     }
 
     /**
@@ -199,13 +627,22 @@ public class Pass2Assembler {
      */
     static void writeMachineCode(String filename) throws IOException {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            System.out.println("\n--- FINAL MACHINE CODE ---");
-            for (String mcode : machineCode) {
-                System.out.println(mcode);
-                bw.write(mcode);
+            if (!quiet) {
+                System.out.println("\n--- FINAL MACHINE CODE ---");
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < machineCode.size; i++) {
+                sb.setLength(0);
+                machineCode.format(i, sb);
+                if (!quiet) {
+                    System.out.println(sb);
+                }
+                bw.append(sb);
                 bw.newLine();
             }
-            System.out.println("--------------------------");
+            if (!quiet) {
+                System.out.println("--------------------------");
+            }
             System.out.println("✅ Machine code written to " + filename);
         }
     }
@@ -0,0 +1,430 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Output-equivalence checks for the ways a program can be assembled. The
+ * machine code of two passes with a sequential pass 2 is the reference;
+ * --parallel pass 2, OnePassAssembler and AssemblerPipeline (each with and
+ * without --mmap) have to give the same listing, and a cached assembly has
+ * to come back as it was stored. A program assembled with --optimize has to
+ * do the same as without it when run on the Emulator. The sample program of
+ * this folder (intermediate_code.txt, symtab.txt, littab.txt) has to load
+ * back from its --object image as the words pass 2 made, and Emulator has
+ * to run it, and a program that patches its own code, the same way with
+ * and without --predecode.
+ *
+ *   javac -encoding UTF-8 -sourcepath ../assignment-1a *.java
+ *   java Pass2AssemblerTest
+ *
+ * Prints each failed check and exits with status 1 if there was any.
+ */
+public class Pass2AssemblerTest {
+
+    static int checks = 0;
+    static int failures = 0;
+    static Path dir;
+
+    public static void main(String[] args) throws Exception {
+        dir = Files.createTempDirectory("pass2-test");
+        Pass2Assembler.quiet = true;
+        try {
+            Path source = write("input.asm", program(12000));
+            String twoPass = twoPass(source, false);
+            check("two passes assemble the program", twoPass.startsWith("100) "));
+            parallel(source, twoPass);
+            onePass(source, twoPass);
+            pipeline(source, twoPass);
+            cache(source);
+            optimizer();
+            objectImage();
+            emulator();
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println((checks - failures) + " of " + checks + " checks passed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A program of about 3n statements with forward references, literals in
+     * several pools, storage and an EQU with an expression operand. Big
+     * enough for --parallel to cut the IC into more than one chunk.
+     */
+    static String program(int n) {
+        StringBuilder sb = new StringBuilder("START\t100\n");
+        for (int i = 0; i < n; i++) {
+            sb.append("L").append(i).append("\tMOVER\tAREG, L").append(i + 1).append('\n');
+            sb.append("\tADD\tBREG, ='").append(i % 7).append("'\n");
+            sb.append("\tMOVEM\tCREG, E\n");
+            if (i % 50 == 49) {
+                sb.append("\tLTORG\n");
+            }
+        }
+        sb.append("L").append(n).append("\tDS\t2\n");
+        sb.append("E\tEQU\tL0 + 1\n");
+        sb.append("\tEND\n");
+        return sb.toString();
+    }
+
+    static void parallel(Path source, String twoPass) throws IOException {
+        Pass2Assembler.ICBuffer ic = pass1(source, false);
+        check("the IC is more than one --parallel chunk", ic.size > ParallelPass2.CHUNK_SIZE);
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParallelPass2.translate(ic, pool);
+        } finally {
+            pool.shutdown();
+        }
+        check("--parallel pass 2 matches the sequential pass", listing().equals(twoPass));
+        check("--mmap pass 1 matches the line reader", twoPass(source, true).equals(twoPass));
+    }
+
+    static void onePass(Path source, String twoPass) throws IOException {
+        for (boolean mmap : new boolean[] { false, true }) {
+            OnePassAssembler.assemble(new Pass1Assembler(), source.toString(), mmap);
+            check("OnePassAssembler" + (mmap ? " --mmap" : "") + " matches two passes", listing().equals(twoPass));
+        }
+    }
+
+    static void pipeline(Path source, String twoPass) throws Exception {
+        for (boolean mmap : new boolean[] { false, true }) {
+            AssemblerPipeline.assemble(source.toString(), mmap);
+            check("AssemblerPipeline" + (mmap ? " --mmap" : "") + " matches two passes", listing().equals(twoPass));
+        }
+    }
+
+    static void cache(Path source) throws IOException {
+        AssemblyCache cache = new AssemblyCache(dir.resolve("cache"), 1 << 20);
+        String key = AssemblyCache.key(source, Collections.emptyList());
+        check("the cache key depends on the mode flags",
+                !key.equals(AssemblyCache.key(source, Collections.singletonList("--mmap"))));
+
+        Path stored = write("machinecode.txt", "100) 04 1 101\n");
+        byte[] diagnostics = "Error: Invalid opcode! X\n".getBytes(StandardCharsets.UTF_8);
+        cache.store(key, Collections.singletonList(stored), diagnostics);
+
+        Path out = Files.createDirectories(dir.resolve("restored"));
+        ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+        List<String> names = cache.restore(key, out, new PrintStream(replayed, true));
+        check("a cached assembly is restored", names != null && names.equals(Collections.singletonList("machinecode.txt")));
+        check("a cached assembly restores its files as stored",
+                Arrays.equals(Files.readAllBytes(out.resolve("machinecode.txt")), Files.readAllBytes(stored)));
+        check("a cached assembly reports its diagnostics again", Arrays.equals(replayed.toByteArray(), diagnostics));
+
+        // a truncated entry is a miss and leaves the output directory alone
+        Path entry = cache.dir.resolve(key + AssemblyCache.SUFFIX);
+        byte[] whole = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(whole, whole.length - 4));
+        Path kept = write("restored/machinecode.txt", "kept\n");
+        check("a truncated cache entry is a miss", cache.restore(key, out, new PrintStream(replayed, true)) == null);
+        check("a truncated cache entry writes no files",
+                new String(Files.readAllBytes(kept), StandardCharsets.UTF_8).equals("kept\n"));
+
+        // so is an entry naming a file outside the output directory
+        try (DataOutputStream w = new DataOutputStream(Files.newOutputStream(entry))) {
+            w.writeInt(AssemblyCache.ENTRY_MAGIC);
+            w.writeInt(1);
+            w.writeUTF("../escaped.txt");
+            w.writeInt(1);
+            w.write('x');
+            w.writeInt(0);
+        }
+        check("a cache entry with a path in a file name is a miss",
+                cache.restore(key, out, new PrintStream(replayed, true)) == null && !Files.exists(dir.resolve("escaped.txt")));
+    }
+
+    /**
+     * Runnable programs for --optimize: one with redundant moves, dead code,
+     * a jump chain and literals to drop or share, and two where an ORIGIN moves the LC back over code
+     * (the words laid over it depend on what was removed before them).
+     */
+    static final String[] RUNNABLE = {
+        "START 100\n"
+                + "MOVER AREG, ='4'\n"
+                + "MOVEM AREG, X\n"
+                + "MOVER AREG, X\n"
+                + "BC ANY, HOP\n"
+                + "ADD AREG, ='9'\n"
+                + "HOP BC ANY, ON\n"
+                + "ON ADD AREG, ='1'\n"
+                + "BC ANY, PAST\n"
+                + "LTORG\n"
+                + "PAST ADD AREG, ='4'\n"
+                + "COMP AREG, ='9'\n"
+                + "BC EQ, DONE\n"
+                + "MULT AREG, ='2'\n"
+                + "DONE MOVEM AREG, X\n"
+                + "PRINT X\n"
+                + "STOP\n"
+                + "SUB AREG, ='1'\n"
+                + "X DS 1\n"
+                + "END\n",
+        "START 100\n"
+                + "MOVER AREG, ='1'\n"
+                + "BC ANY, L1\n"
+                + "ADD AREG, ='5'\n"
+                + "L1 ADD AREG, ='2'\n"
+                + "MOVEM AREG, R\n"
+                + "PRINT R\n"
+                + "STOP\n"
+                + "R DS 1\n"
+                + "ORIGIN 103\n"
+                + "ADD AREG, ='3'\n"
+                + "ORIGIN 108\n"
+                + "END\n",
+        "START 100\n"
+                + "MOVER AREG, ='8'\n"
+                + "L1 MOVEM AREG, X\n"
+                + "MOVER AREG, X\n"
+                + "ADD AREG, ='4'\n"
+                + "ADD AREG, ='4'\n"
+                + "MOVEM AREG, X\n"
+                + "PRINT X\n"
+                + "STOP\n"
+                + "X DS 1\n"
+                + "ORIGIN L1\n"
+                + "ADD AREG, ='2'\n"
+                + "ADD AREG, ='2'\n"
+                + "ORIGIN 109\n"
+                + "END\n",
+    };
+
+    static void optimizer() throws IOException {
+        for (int p = 0; p < RUNNABLE.length; p++) {
+            Path source = write("runnable" + p + ".asm", RUNNABLE[p]);
+            Path plainImage = objectImage(pass1(source, false, false), "plain" + p + ".obj");
+            Path optimizedImage = objectImage(pass1(source, false, true), "optimized" + p + ".obj");
+            String plain = emulate(plainImage, false);
+            String optimized = emulate(optimizedImage, false);
+            check("program " + p + " runs", plain.startsWith(p == 0 ? "9\n" : p == 1 ? "4\n" : "20\n"));
+            check("program " + p + " does the same with --optimize", optimized.equals(plain));
+        }
+        check("--optimize makes program 0 smaller",
+                Files.size(dir.resolve("optimized0.obj")) < Files.size(dir.resolve("plain0.obj")));
+    }
+
+    /**
+     * Pass 2 over the sample in this folder, as Pass2Assembler --object runs it.
+     *
+     * @return The image file.
+     */
+    static Path sampleImage() throws IOException {
+        Pass2Assembler.symtab = new Pass2Assembler.AddressTable();
+        Pass2Assembler.littab = new Pass2Assembler.AddressTable();
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        Pass2Assembler.pass = new Pass2Assembler.SequentialTranslator();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));  // "... loaded successfully."
+        try {
+            Pass2Assembler.loadSymbolTable("symtab.txt");
+            Pass2Assembler.loadLiteralTable("littab.txt");
+        } finally {
+            System.setOut(out);
+        }
+        Pass2Assembler.processIC("intermediate_code.txt");
+        Path file = dir.resolve("sample.obj");
+        ObjectImage.write(Pass2Assembler.machineCode, file);
+        return file;
+    }
+
+    static void objectImage() throws IOException {
+        ObjectImage obj = new ObjectImage(sampleImage());
+        Pass2Assembler.MachineCode code = Pass2Assembler.machineCode;
+        check("the object image starts where the program does", obj.start == code.lc(0));
+        check("the object image holds every word", obj.words == code.size);
+
+        // each word where pass 2 put it, a later one over an earlier one at
+        // the same address (the sample ORIGINs back over an instruction)
+        int[] expected = new int[obj.end()];
+        boolean decodes = true;
+        for (int i = 0; i < code.size; i++) {
+            if (code.isData(i)) {
+                expected[code.lc(i)] = code.operand(i);
+            } else {
+                int word = ObjectImage.encode(code.opcode(i), code.reg(i), code.operand(i));
+                decodes &= ObjectImage.opcode(word) == code.opcode(i) && ObjectImage.reg(word) == code.reg(i)
+                        && ObjectImage.address(word) == code.operand(i);
+                expected[code.lc(i)] = word;
+            }
+        }
+        int[] loaded = new int[obj.end()];
+        obj.loadInto(loaded);
+        check("instruction words decode back to opcode, register and address", decodes);
+        check("the object image loads back as pass 2 made it", Arrays.equals(loaded, expected));
+    }
+
+    /**
+     * Stores a STOP (the literal 0) over an instruction of the block it is
+     * running in, so --predecode has to drop its cached block.
+     */
+    static final String SELF_MODIFYING = "START 100\n"
+            + "MOVER AREG, ='0'\n"
+            + "MOVEM AREG, PATCH\n"
+            + "MOVER BREG, ='7'\n"
+            + "PATCH ADD BREG, ='7'\n"
+            + "MOVEM BREG, X\n"
+            + "PRINT X\n"
+            + "STOP\n"
+            + "X DS 1\n"
+            + "END\n";
+
+    static void emulator() throws IOException {
+        Path sample = dir.resolve("sample.obj");
+        String plain = emulate(sample, false);
+        check("the sample runs to STOP", plain.startsWith("regs [0, 4, 0, 0,"));
+        check("--predecode runs the sample the same", emulate(sample, true).equals(plain));
+
+        Path patched = objectImage(pass1(write("patched.asm", SELF_MODIFYING), false), "patched.obj");
+        plain = emulate(patched, false);
+        check("a program can store a STOP over its own code", plain.equals("regs [0, 0, 7, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0]"));
+        Emulator emu = new Emulator(new ObjectImage(patched));
+        boolean same = true;
+        for (int i = 0; i < 3; i++) {
+            same &= emulate(emu, true).equals(plain);    // as --repeat=3
+        }
+        check("--predecode runs self-modifying code the same, run after run", same);
+    }
+
+    /**
+     * Pass 2 over ic into a fresh machine code, written out as an object image.
+     *
+     * @return The image file.
+     */
+    static Path objectImage(Pass2Assembler.ICBuffer ic, String name) throws IOException {
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        Pass2Assembler.pass = new Pass2Assembler.SequentialTranslator();
+        ic.replay(0, ic.size, Pass2Assembler.pass);
+        Path file = dir.resolve(name);
+        ObjectImage.write(Pass2Assembler.machineCode, file);
+        return file;
+    }
+
+    /**
+     * Loads image and runs it once, with no input.
+     *
+     * @return What it printed, then the registers.
+     */
+    static String emulate(Path image, boolean predecode) throws IOException {
+        Emulator emu = new Emulator(new ObjectImage(image));
+        return emulate(emu, predecode);
+    }
+
+    static String emulate(Emulator emu, boolean predecode) throws IOException {
+        StringWriter printed = new StringWriter();
+        emu.input = new Emulator.DataReader(new ByteArrayInputStream(new byte[0]));
+        emu.output = printed;
+        emu.reset(predecode);
+        if (predecode) {
+            emu.runPredecoded();
+        } else {
+            emu.run();
+        }
+        return printed + "regs " + Arrays.toString(emu.regs);
+    }
+
+    static Pass2Assembler.ICBuffer pass1(Path source, boolean mmap) throws IOException {
+        return pass1(source, mmap, false);
+    }
+
+    /**
+     * Pass 1 over source, line by line or through MappedSourceReader if
+     * mmap, with its tables loaded into pass 2. With optimize the IC goes
+     * through PeepholeOptimizer first, as with Pass1Assembler --optimize.
+     *
+     * @return The IC.
+     */
+    static Pass2Assembler.ICBuffer pass1(Path source, boolean mmap, boolean optimize) throws IOException {
+        Pass1Assembler p1 = new Pass1Assembler();
+        p1.setQuiet(true);
+        if (optimize) {
+            p1.keepAddressOperands();
+        }
+        if (mmap) {
+            MappedSourceReader reader = new MappedSourceReader(source.toString(), p1.keywords());
+            String[] tokens = new String[8];
+            try {
+                while (reader.nextLine()) {
+                    tokens = reader.tokens(tokens);
+                    p1.processTokens(tokens, reader.count());
+                }
+            } finally {
+                reader.close();
+            }
+        } else {
+            for (String line : Files.readAllLines(source)) {
+                p1.processLine(line);
+            }
+        }
+        if (optimize) {
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));  // the optimizer's summary
+            try {
+                p1.optimizeIntermediateCode();
+            } finally {
+                System.setOut(out);
+            }
+        }
+
+        Pass2Assembler.symtab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < p1.symbolCount(); i++) {
+            int addr = p1.symbolAddress(i);
+            Pass2Assembler.symtab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+        Pass2Assembler.littab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < p1.literalCount(); i++) {
+            int addr = p1.literalAddress(i);
+            Pass2Assembler.littab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+        Pass2Assembler.ICBuffer ic = new Pass2Assembler.ICBuffer();
+        for (int i = 0; i < p1.icSize(); i++) {
+            ICRecord r = p1.icRecord(i);
+            ic.record(r.cls, r.opcode, r.reg, r.kind, r.index, r.constant);
+        }
+        return ic;
+    }
+
+    /**
+     * Pass 1 and then the sequential pass 2 over source.
+     *
+     * @return The listing.
+     */
+    static String twoPass(Path source, boolean mmap) throws IOException {
+        Pass2Assembler.ICBuffer ic = pass1(source, mmap);
+        Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+        Pass2Assembler.pass = new Pass2Assembler.SequentialTranslator();
+        ic.replay(0, ic.size, Pass2Assembler.pass);
+        return listing();
+    }
+
+    /**
+     * Pass2Assembler.machineCode as machinecode.txt would have it.
+     */
+    static String listing() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Pass2Assembler.machineCode.size; i++) {
+            Pass2Assembler.machineCode.format(i, sb);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    static Path write(String name, String text) throws IOException {
+        return Files.write(dir.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tables pass 1 of the macro processor builds (MNT, MDT, KPDT, PNTAB)
+ * plus the non-macro code, held in memory so that pass 2 can expand from
+ * them in the same JVM. The text files MacroPass1 writes are a dump of this
+ * (see MacroPass1.dump); nothing has to go through them.
+ *
+ * The MDT is one contiguous array of lines, each already split at its
+ * parameter references: line i reads
+ *   mdtText[i][0] (P,mdtParam[i][0]) mdtText[i][1] ... (P,mdtParam[i][n-1]) mdtText[i][n]
+ * where (P,k) is the parameter's 1-based PNTAB index, as in mdt.txt. A MEND
+ * line has mdtParam[i] == null and its source text in mdtText[i][0].
+ */
+public class MacroTables {
+
+    /**
+     * One MNT entry, together with the macro's PNTAB.
+     */
+    static class Macro {
+        final String name;
+        int pp;            // positional parameter count
+        int kp;            // keyword parameter count
+        final int mdtp;    // index of the first body line in the MDT
+        final int kpdtp;   // index of the first KPDT row
+        final List<String> params = new ArrayList<>(); // PNTAB, in prototype order
+
+        Macro(String name, int mdtp, int kpdtp) {
+            this.name = name;
+            this.mdtp = mdtp;
+            this.kpdtp = kpdtp;
+        }
+    }
+
+    // MNT, in definition order, and by name
+    final List<Macro> mnt = new ArrayList<>();
+    final Map<String, Macro> macros = new HashMap<>();
+
+    // MDT
+    String[][] mdtText = new String[64][];
+    int[][] mdtParam = new int[64][];
+    int mdtSize = 0;
+
+    // KPDT: keyword name and default value ("-" when the prototype gives none)
+    final List<String> kpdName = new ArrayList<>();
+    final List<String> kpdDefault = new ArrayList<>();
+
+    // Non-macro code, what MacroPass1 writes to intermediate.txt
+    final List<String> code = new ArrayList<>();
+
+    Macro define(String name) {
+        Macro m = new Macro(name, mdtSize, kpdName.size());
+        mnt.add(m);
+        macros.put(name, m);
+        return m;
+    }
+
+    void addKeyword(String name, String defaultValue) {
+        kpdName.add(name);
+        kpdDefault.add(defaultValue);
+    }
+
+    /**
+     * Appends a body line of macro m to the MDT, splitting it at every &NAME
+     * that names one of m's parameters.
+     */
+    void addLine(Macro m, String line) {
+        List<String> text = new ArrayList<>();
+        List<Integer> params = new ArrayList<>();
+        int start = 0;
+        int i = line.indexOf('&');
+        while (i >= 0) {
+            int end = i + 1;
+            while (end < line.length() && isNameChar(line.charAt(end))) {
+                end++;
+            }
+            int param = m.params.indexOf(line.substring(i + 1, end));
+            if (param >= 0) {
+                text.add(line.substring(start, i));
+                params.add(param + 1);
+                start = end;
+            }
+            i = line.indexOf('&', end);
+        }
+        text.add(line.substring(start));
+
+        int[] p = new int[params.size()];
+        for (int k = 0; k < p.length; k++) {
+            p[k] = params.get(k);
+        }
+        add(text.toArray(new String[0]), p);
+    }
+
+    void addMend(String line) {
+        add(new String[] { line }, null);
+    }
+
+    private void add(String[] text, int[] params) {
+        if (mdtSize == mdtText.length) {
+            mdtText = Arrays.copyOf(mdtText, 2 * mdtSize);
+            mdtParam = Arrays.copyOf(mdtParam, 2 * mdtSize);
+        }
+        mdtText[mdtSize] = text;
+        mdtParam[mdtSize] = params;
+        mdtSize++;
+    }
+
+    boolean isMend(int line) {
+        return mdtParam[line] == null;
+    }
+
+    /**
+     * The source text of an MDT line, with the parameters written back as
+     * &NAME.
+     */
+    String source(Macro m, int line) {
+        String[] text = mdtText[line];
+        int[] params = mdtParam[line];
+        if (params == null) {
+            return text[0];
+        }
+        StringBuilder sb = new StringBuilder(text[0]);
+        for (int k = 0; k < params.length; k++) {
+            sb.append('&').append(m.params.get(params[k] - 1)).append(text[k + 1]);
+        }
+        return sb.toString();
+    }
+
+    static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
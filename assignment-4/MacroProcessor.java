@@ -0,0 +1,244 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Both passes of the macro processor in one JVM. MacroPass1 (assignment-3)
+ * builds the MNT, MDT, KPDT and PNTAB in memory and macroPass2 expands the
+ * code straight from them, so nothing is written out and parsed back in
+ * between. The MDT lines come already split at their parameters, which
+ * become macroPass2's compiled templates without another scan.
+ *
+ * With --one-pass the input is read only once: each macro is handed to
+ * macroPass2 as soon as its MEND has been read and calls are expanded as
+ * they come, so the code is never held in memory either. That gives the
+ * two-pass result as long as no macro is used before its definition, at
+ * the top level or inside another macro's expansion, and none is defined
+ * twice. If one is, which shows up when it gets defined, the rest of the
+ * input is only read for definitions and the output is written again from
+ * a second read of the input.
+ *
+ *   javac -encoding UTF-8 -sourcepath ../assignment-3 *.java
+ *   java MacroProcessor [--quiet] [--dump] [--one-pass] [--max-depth=N] [--memo=N]
+ *                       [macro_input.asm [output.asm]]
+ *
+ * --dump also writes pass 1's text files (mnt.txt, mdt.txt, kpdt.txt,
+ * pntab.txt, intermediate.txt) into the current directory, as MacroPass1
+ * does.
+ */
+public class MacroProcessor {
+
+    public static void main(String[] args) {
+        List<String> files = new ArrayList<>();
+        boolean dump = false;
+        boolean onePass = false;
+        for (String arg : args) {
+            if (arg.equals("--quiet")) {
+                macroPass2.quiet = true;
+            } else if (arg.equals("--dump")) {
+                dump = true;
+            } else if (arg.equals("--one-pass")) {
+                onePass = true;
+            } else if (arg.startsWith("--max-depth=")) {
+                macroPass2.maxDepth = Integer.parseInt(arg.substring("--max-depth=".length()));
+            } else if (arg.startsWith("--memo=")) {
+                macroPass2.memoCapacity = Integer.parseInt(arg.substring("--memo=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+        String input = files.size() > 0 ? files.get(0) : "macro_input.asm";
+        String output = files.size() > 1 ? files.get(1) : "output.asm";
+
+        try {
+            MacroTables tables;
+            if (onePass) {
+                OnePass pass = new OnePass(dump);
+                pass.run(input, output);
+                tables = pass.tables;
+                if (pass.forwardUse != null) {
+                    System.out.println("Macro " + pass.forwardUse + " is used before its definition, expanded in two passes");
+                }
+            } else {
+                tables = MacroPass1.build(input);
+                load(tables);
+                expand(tables.code, output);
+            }
+            if (dump) {
+                MacroPass1.dump(tables, new File("."));
+            }
+            System.out.println("Macro expansion completed. Output written to " + output);
+            if (macroPass2.memoCapacity > 0) {
+                System.out.println(macroPass2.memoSummary());
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One pass over the input: pass 1 hands each code line straight to
+     * macroPass2, with every macro defined so far already loaded.
+     */
+    static class OnePass implements MacroPass1.CodeSink {
+        final MacroTables tables = new MacroTables();
+        private final boolean keepCode;
+        private final Set<String> copied = new HashSet<>(); // first tokens of the lines written unexpanded
+        private int loaded = 0;
+        private BufferedWriter bw;
+        String forwardUse; // the first macro found to be used before its (last) definition
+
+        OnePass(boolean keepCode) {
+            this.keepCode = keepCode;
+        }
+
+        void run(String input, String output) throws IOException {
+            clear();
+            bw = new BufferedWriter(new FileWriter(output));
+            macroPass2.unexpanded = copied; // the lines expansions leave alone count too
+            try {
+                BufferedReader br = new BufferedReader(new FileReader(input));
+                try {
+                    MacroPass1.build(br, tables, this);
+                } finally {
+                    br.close();
+                }
+                loadNew();
+            } finally {
+                macroPass2.unexpanded = null;
+                bw.close();
+            }
+            if (forwardUse == null) {
+                return;
+            }
+
+            // Fall back to two passes: all the macros are known now. The
+            // MNT starts again from pass 1's, without the macros the
+            // expansions so far defined.
+            load(tables);
+            if (keepCode) {
+                expand(tables.code, output);
+                return;
+            }
+            BufferedWriter out = new BufferedWriter(new FileWriter(output));
+            try {
+                BufferedReader br = new BufferedReader(new FileReader(input));
+                try {
+                    MacroPass1.build(br, new MacroTables(), line -> macroPass2.processLine(line, out));
+                } finally {
+                    br.close();
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        public void line(String line) throws IOException {
+            loadNew();
+            if (keepCode) {
+                tables.code.add(line);
+            }
+            if (forwardUse != null) {
+                return; // the output is written again anyway
+            }
+            if (!macroPass2.processLine(line, bw)) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty()) {
+                    copied.add(macroPass2.firstToken(trimmed));
+                }
+            }
+        }
+
+        // Loads the macros pass 1 has completed since the last line. Two
+        // passes would have expanded the lines copied so far with the last
+        // definition of every macro, so a redefinition falls back as well.
+        private void loadNew() {
+            while (loaded < tables.mnt.size()) {
+                MacroTables.Macro m = tables.mnt.get(loaded++);
+                if (forwardUse == null && (copied.contains(m.name) || macroPass2.mnt.containsKey(m.name))) {
+                    forwardUse = m.name;
+                }
+                add(tables, m);
+            }
+        }
+    }
+
+    static void expand(List<String> code, String output) throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(output));
+        try {
+            for (String line : code) {
+                macroPass2.processLine(line, bw);
+            }
+        } finally {
+            bw.close();
+        }
+    }
+
+    static void clear() {
+        macroPass2.mnt.clear();
+        macroPass2.mdt.clear();
+        macroPass2.kpdt.clear();
+        macroPass2.mntVersion++;
+    }
+
+    /**
+     * Replaces macroPass2's MNT and KPDT with pass 1's, every macro with its
+     * body already compiled.
+     */
+    static void load(MacroTables tables) {
+        clear();
+        for (MacroTables.Macro m : tables.mnt) {
+            add(tables, m);
+        }
+    }
+
+    /**
+     * Adds macro m to macroPass2's MNT and its keyword defaults to the KPDT.
+     */
+    static void add(MacroTables tables, MacroTables.Macro m) {
+        int kpdIndex = macroPass2.kpdt.size();
+        for (int i = 0; i < m.kp; i++) {
+            macroPass2.kpdt.add(new String[] { tables.kpdName.get(m.kpdtp + i), tables.kpdDefault.get(m.kpdtp + i) });
+        }
+        macroPass2.MNTEntry entry = new macroPass2.MNTEntry(m.name, m.pp, m.kp, m.mdtp, kpdIndex);
+        entry.body = compile(tables, m, entry);
+        macroPass2.mnt.put(m.name, entry);
+        macroPass2.mntVersion++;
+    }
+
+    /**
+     * macroPass2's template for macro m, from its MDT lines. Parameters are
+     * numbered in PNTAB (prototype) order there, while macroPass2 puts the
+     * positional ones first, so the numbers are mapped to slots here.
+     */
+    static macroPass2.Template compile(MacroTables tables, MacroTables.Macro m, macroPass2.MNTEntry entry) {
+        int[] slotOf = new int[m.params.size()];
+        int positional = 0;
+        int keyword = 0;
+        for (int i = 0; i < slotOf.length; i++) {
+            if (keyword < m.kp && m.params.get(i).equals(tables.kpdName.get(m.kpdtp + keyword))) {
+                slotOf[i] = m.pp + keyword++;
+            } else {
+                slotOf[i] = positional++;
+            }
+        }
+
+        int lines = 0;
+        while (m.mdtp + lines < tables.mdtSize && !tables.isMend(m.mdtp + lines)) {
+            lines++;
+        }
+        String[][] lineText = new String[lines][];
+        int[][] lineSlot = new int[lines][];
+        String[][] lineRef = new String[lines][];
+        for (int l = 0; l < lines; l++) {
+            int[] params = tables.mdtParam[m.mdtp + l];
+            lineText[l] = tables.mdtText[m.mdtp + l];
+            lineSlot[l] = new int[params.length];
+            lineRef[l] = new String[params.length];
+            for (int k = 0; k < params.length; k++) {
+                lineSlot[l][k] = slotOf[params[k] - 1];
+                lineRef[l][k] = "&" + m.params.get(params[k] - 1);
+            }
+        }
+        return new macroPass2.Template(macroPass2.parameterNames(entry).toArray(new String[0]), lineText, lineSlot, lineRef);
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Output-equivalence checks for the macro processor. However a program is
+ * expanded (--one-pass or two passes, with or without --memo), it has to
+ * come out the same, and so does the ALA printout.
+ *
+ *   javac -encoding UTF-8 -sourcepath ../assignment-3 *.java
+ *   java MacroProcessorTest
+ *
+ * Prints each failed check and exits with status 1 if there was any.
+ */
+public class MacroProcessorTest {
+
+    static int checks = 0;
+    static int failures = 0;
+    static Path dir;
+
+    public static void main(String[] args) throws IOException {
+        dir = Files.createTempDirectory("macro-test");
+        macroPass2.quiet = true;
+        try {
+            definedBeforeUse();
+            forwardCall();
+            nestedForwardCall();
+            redefinition();
+            memo();
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println((checks - failures) + " of " + checks + " checks passed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    static void definedBeforeUse() throws IOException {
+        String source = "MACRO\nINCR\t&X, &R=AREG\nADD\t&R, &X\nMEND\n"
+                + "START\t100\nINCR\tA\nINCR\tB, R=BREG\nEND\n";
+        String twoPass = twoPass(source);
+        check("two passes expand calls", twoPass.equals("START\t100\n    ADD\tAREG, A\n    ADD\tBREG, B\nEND\n"));
+        check("one pass matches two passes", onePass(source).equals(twoPass));
+    }
+
+    static void forwardCall() throws IOException {
+        String source = "START\t100\nINCR\tA\n"
+                + "MACRO\nINCR\t&X\nADD\tAREG, &X\nMEND\nINCR\tB\nEND\n";
+        String twoPass = twoPass(source);
+        check("two passes expand a call before the definition", twoPass.contains("    ADD\tAREG, A\n"));
+        check("one pass matches two passes for a call before the definition", onePass(source).equals(twoPass));
+    }
+
+    static void nestedForwardCall() throws IOException {
+        // M1's body calls M3, which is only defined after M1's first call
+        String source = "MACRO\nM1\t&X\nM3\t&X\nMEND\n"
+                + "START\t100\nM1\t10\n"
+                + "MACRO\nM3\t&Y\nADD\tBREG, &Y\nMEND\nM1\t20\nEND\n";
+        String twoPass = twoPass(source);
+        check("two passes expand a nested call to a later macro", twoPass.contains("    ADD\tBREG, 10\n"));
+        check("one pass matches two passes for a nested call to a later macro", onePass(source).equals(twoPass));
+    }
+
+    static void redefinition() throws IOException {
+        String source = "MACRO\nM1\t&X\nADD\tAREG, &X\nMEND\nSTART\t100\nM1\t10\n"
+                + "MACRO\nM1\t&X\nSUB\tAREG, &X\nMEND\nM1\t20\nEND\n";
+        check("one pass matches two passes when a macro is redefined", onePass(source).equals(twoPass(source)));
+    }
+
+    static void memo() throws IOException {
+        // M1 calls M2, and both are called again with the same arguments
+        String source = "MACRO\nM2\t&Y, &R=AREG\nADD\t&R, &Y\nMEND\n"
+                + "MACRO\nM1\t&X\nM2\t&X, R=BREG\nSUB\tCREG, &X\nMEND\n"
+                + "START\t100\nM1\tA\nM2\tB\nM1\tA\nM2\tB\nM1\tC\nEND\n";
+        macroPass2.quiet = false;
+        PrintStream stdout = System.out;
+        try {
+            ByteArrayOutputStream plainAla = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(plainAla, true));
+            macroPass2.memoCapacity = 0;
+            String plain = twoPass(source);
+
+            ByteArrayOutputStream memoAla = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(memoAla, true));
+            macroPass2.memoCapacity = 16;
+            long hits = macroPass2.memoHits;
+            String memo = twoPass(source);
+            hits = macroPass2.memoHits - hits;
+
+            System.setOut(stdout);
+            check("--memo hits repeated calls", hits == 2);
+            check("--memo matches no memo", memo.equals(plain));
+            check("--memo prints the same ALAs, nested calls included", memoAla.toString().equals(plainAla.toString()));
+        } finally {
+            System.setOut(stdout);
+            macroPass2.memoCapacity = 0;
+            macroPass2.quiet = true;
+        }
+    }
+
+    static String twoPass(String source) throws IOException {
+        Path in = write("two.asm", source);
+        Path out = dir.resolve("two.out");
+        MacroTables tables = MacroPass1.build(in.toString());
+        MacroProcessor.load(tables);
+        MacroProcessor.expand(tables.code, out.toString());
+        return read(out);
+    }
+
+    static String onePass(String source) throws IOException {
+        Path in = write("one.asm", source);
+        Path out = dir.resolve("one.out");
+        new MacroProcessor.OnePass(false).run(in.toString(), out.toString());
+        return read(out);
+    }
+
+    static Path write(String name, String text) throws IOException {
+        return Files.write(dir.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
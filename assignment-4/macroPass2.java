@@ -11,6 +11,9 @@ public class macroPass2 {
         int kpCount;
         int mdtIndex;
         int kpdIndex;
+        String[] positional; // names of the positional params, null for P1, P2, ...
+        Template body; // compiled on the first call
+        boolean active; // being expanded, somewhere on the expansion stack
 
         MNTEntry(String name, int ppCount, int kpCount, int mdtIndex, int kpdIndex) {
             this.name = name;
@@ -21,17 +24,162 @@ public class macroPass2 {
         }
     }
 
+    // A macro body compiled for expansion: literal text with parameter slots
+    // in between. Line l reads lineText[l][0] value(lineSlot[l][0])
+    // lineText[l][1] ... A slot is the parameter's index, positional ones
+    // first (P1 = 0) and then the keyword ones in KPDTAB order; lineRef is
+    // how the body wrote it, which is output as is when the call gives that
+    // parameter no value.
+    //
+    // text/slot/ref hold the same with all the lines joined, indent and
+    // newlines included, so that a body with no nested calls or definitions
+    // is expanded in one pass over it.
+    static class Template {
+        final String[] names; // parameter names by slot
+        final String[][] lineText;
+        final int[][] lineSlot;
+        final String[][] lineRef;
+        final String[] head; // first token of each line, null if a parameter is part of it
+        final String[] text;
+        final int[] slot;
+        final String[] ref;
+        private int checked = -1; // mntVersion that flat was worked out for
+        private boolean flat;
+        private Set<String> headsAddedTo; // the unexpanded set head[] was last added to
+
+        Template(String[] names, String[][] lineText, int[][] lineSlot, String[][] lineRef) {
+            this.names = names;
+            this.lineText = lineText;
+            this.lineSlot = lineSlot;
+            this.lineRef = lineRef;
+
+            head = new String[lineText.length];
+            List<String> text = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            List<String> refs = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            for (int l = 0; l < lineText.length; l++) {
+                String first = lineText[l][0];
+                int from = 0;
+                while (from < first.length() && Character.isWhitespace(first.charAt(from))) {
+                    from++;
+                }
+                int to = from;
+                while (to < first.length() && !Character.isWhitespace(first.charAt(to))) {
+                    to++;
+                }
+                if (to < first.length() || lineSlot[l].length == 0) {
+                    head[l] = first.substring(from, to);
+                } // else the first token runs into a parameter: known only once expanded
+
+                literal.append("    ").append(lineText[l][0]);
+                for (int k = 0; k < lineSlot[l].length; k++) {
+                    text.add(literal.toString());
+                    literal.setLength(0);
+                    slots.add(lineSlot[l][k]);
+                    refs.add(lineRef[l][k]);
+                    literal.append(lineText[l][k + 1]);
+                }
+                literal.append('\n');
+            }
+            text.add(literal.toString());
+
+            this.text = text.toArray(new String[0]);
+            this.slot = new int[slots.size()];
+            for (int i = 0; i < slot.length; i++) {
+                slot[i] = slots.get(i);
+            }
+            this.ref = refs.toArray(new String[0]);
+        }
+
+        // True if, with the MNT as it is now, no line of the body can be a
+        // macro call or start a definition
+        boolean flat() {
+            if (checked != mntVersion) {
+                flat = true;
+                for (String h : head) {
+                    if (h == null || h.equalsIgnoreCase("MACRO") || mnt.containsKey(h)) {
+                        flat = false;
+                        break;
+                    }
+                }
+                checked = mntVersion;
+            }
+            return flat;
+        }
+    }
+
+    // A macro call being expanded: the macro, the next line of its body and
+    // the actual parameters
+    static class Frame {
+        MNTEntry entry;
+        int line;
+        String[] values = new String[8];
+    }
+
     static Map<String, MNTEntry> mnt = new HashMap<>();
-    static Map<Integer, String> mdt = new HashMap<>();
+    static List<String> mdt = new ArrayList<>(); // line i of mdt.txt at index i
     static List<String[]> kpdt = new ArrayList<>();
+    static boolean quiet = false; // --quiet: don't print the ALA of every call
+    static int maxDepth = 100; // --max-depth=N: how deep macro calls may nest
+    static int mntVersion = 0; // changes whenever macros are added to the MNT
+    static int expansionErrors = 0;
+
+    // When not null, collects the first token of every line an expansion
+    // writes out unexpanded. MacroProcessor --one-pass checks each macro
+    // it defines against these, as a line copied before the definition
+    // would have been a call to it in two passes.
+    static Set<String> unexpanded;
+
+    // --memo=N: keeps the expanded text of up to N distinct calls (macro
+    // name and arguments as written), least recently used out first, and
+    // writes it out again when the same call comes up. An entry holds for
+    // one version of the MNT; expansions that define a macro or report an
+    // error are not kept. Unless --quiet, the ALA printout of the call and
+    // of every call inside its expansion is kept with it and printed again.
+    static int memoCapacity = 0;
+    static long memoHits, memoMisses, memoEvictions;
+    private static LinkedHashMap<String, Memo> memo;
+    private static int memoVersion;
+    private static final CharArrayWriter capture = new CharArrayWriter();
+    private static StringBuilder alaCapture; // when not null, printALA copies its output here
+
+    static class Memo {
+        final char[] text;
+        final String ala;
+
+        Memo(char[] text, String ala) {
+            this.text = text;
+            this.ala = ala;
+        }
+    }
+
+    // reused by every expansion
+    private static final StringBuilder expansion = new StringBuilder();
+    private static char[] chars = new char[256];
+    private static String[] values = new String[8];
+    private static Frame[] stack = new Frame[16];
+    private static int depth = 0;
 
     public static void main(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.startsWith("--max-depth=")) {
+                maxDepth = Integer.parseInt(arg.substring("--max-depth=".length()));
+            } else if (arg.startsWith("--memo=")) {
+                memoCapacity = Integer.parseInt(arg.substring("--memo=".length()));
+            }
+        }
         try {
             loadMNT("mnt.txt");
             loadMDT("mdt.txt");
             loadKPDTAB("kpdtab.txt");
             processIntermediateCode("input.asm");
             System.out.println("Macro expansion completed. Output written to output.asm");
+            if (memoCapacity > 0) {
+                System.out.println(memoSummary());
+            }
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
         }
@@ -51,14 +199,14 @@ public class macroPass2 {
             mnt.put(name, new MNTEntry(name, ppCount, kpCount, mdtIndex, kpdIndex));
         }
         br.close();
+        mntVersion++;
     }
 
     static void loadMDT(String filename) throws IOException {
         BufferedReader br = new BufferedReader(new FileReader(filename));
         String line;
-        int index = 0;
         while ((line = br.readLine()) != null) {
-            mdt.put(index++, line.trim());
+            mdt.add(line.trim());
         }
         br.close();
     }
@@ -78,84 +226,475 @@ public class macroPass2 {
         String line;
 
         while ((line = br.readLine()) != null) {
-            if (line.trim().isEmpty()) continue;
-
-            String[] tokens = line.trim().split("\\s+");
-            String macroName = tokens[0];
-
-            if (mnt.containsKey(macroName)) {
-                String[] args = tokens.length > 1 ? line.substring(macroName.length()).trim().split(",") : new String[0];
-                expandMacro(macroName, args, bw);
-            } else {
-                bw.write(line + "\n");
-            }
+            processLine(line, bw);
         }
 
         br.close();
         bw.close();
     }
 
+    // Expands line if it is a macro call, else copies it to bw; true if it
+    // was a call
+    static boolean processLine(String line, BufferedWriter bw) throws IOException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) return false;
+
+        String macroName = firstToken(trimmed);
+
+        if (mnt.containsKey(macroName)) {
+            expandMacro(macroName, arguments(trimmed, macroName.length()), bw);
+            return true;
+        }
+        bw.write(line);
+        bw.write('\n');
+        return false;
+    }
+
+    // The first blank-separated token of a trimmed, non-empty line
+    static String firstToken(String trimmed) {
+        int end = 0;
+        while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end))) {
+            end++;
+        }
+        return trimmed.substring(0, end);
+    }
+
+    // The actual parameters of a call, the rest of the trimmed line after
+    // the name
+    static String[] arguments(String trimmed, int nameEnd) {
+        String rest = trimmed.substring(nameEnd).trim();
+        return rest.isEmpty() ? new String[0] : rest.split(",");
+    }
+
+    // Parameter names of a macro: P1, P2, ... for the positional ones, then
+    // the keyword names; the index of a name is its slot.
+    static List<String> parameterNames(MNTEntry entry) {
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i <= entry.ppCount; i++) {
+            names.add(entry.positional != null ? entry.positional[i - 1] : "P" + i);
+        }
+        for (int i = 0; i < entry.kpCount; i++) {
+            names.add(kpdt.get(entry.kpdIndex + i)[0]);
+        }
+        return names;
+    }
+
+    // Compiles the MDT lines of a macro, up to its MEND (the MACRO/MEND
+    // pairs of definitions in the body are part of it). A parameter is
+    // written &NAME (the longest parameter name the text after & starts
+    // with, as String.replace would have found it) or (P,n) as MacroPass1
+    // writes it.
+    static Template compile(MNTEntry entry) {
+        List<String> names = parameterNames(entry);
+        List<String[]> lineText = new ArrayList<>();
+        List<int[]> lineSlot = new ArrayList<>();
+        List<String[]> lineRef = new ArrayList<>();
+        List<String> text = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<String> refs = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int level = 0;
+        for (int mdtIndex = entry.mdtIndex; mdtIndex < mdt.size(); mdtIndex++) {
+            String line = mdt.get(mdtIndex);
+            String first = line.isEmpty() ? "" : firstToken(line);
+            if (first.equalsIgnoreCase("MEND") && level-- == 0) {
+                break;
+            } else if (first.equalsIgnoreCase("MACRO")) {
+                level++;
+            }
+
+            int i = 0;
+            while (i < line.length()) {
+                int slot = -1;
+                int end = i;
+                char c = line.charAt(i);
+                if (c == '&') {
+                    for (int k = 0; k < names.size(); k++) {
+                        String name = names.get(k);
+                        if (line.startsWith(name, i + 1) && i + 1 + name.length() > end) {
+                            slot = k;
+                            end = i + 1 + name.length();
+                        }
+                    }
+                } else if (c == '(' && line.startsWith("(P,", i)) {
+                    int close = line.indexOf(')', i);
+                    if (close > i + 3) {
+                        try {
+                            int n = Integer.parseInt(line.substring(i + 3, close));
+                            if (n >= 1 && n <= names.size()) {
+                                slot = n - 1;
+                                end = close + 1;
+                            }
+                        } catch (NumberFormatException e) {
+                            // not a parameter, just text
+                        }
+                    }
+                }
+                if (slot < 0) {
+                    literal.append(c);
+                    i++;
+                    continue;
+                }
+                text.add(literal.toString());
+                literal.setLength(0);
+                slots.add(slot);
+                refs.add(line.substring(i, end));
+                i = end;
+            }
+            text.add(literal.toString());
+            literal.setLength(0);
+
+            int[] slot = new int[slots.size()];
+            for (int k = 0; k < slot.length; k++) {
+                slot[k] = slots.get(k);
+            }
+            lineText.add(text.toArray(new String[0]));
+            lineSlot.add(slot);
+            lineRef.add(refs.toArray(new String[0]));
+            text.clear();
+            slots.clear();
+            refs.clear();
+        }
+        return new Template(names.toArray(new String[0]), lineText.toArray(new String[0][]),
+                lineSlot.toArray(new int[0][]), lineRef.toArray(new String[0][]));
+    }
+
     static void expandMacro(String macroName, String[] args, BufferedWriter bw) throws IOException {
         MNTEntry entry = mnt.get(macroName);
+        if (entry.body == null) {
+            entry.body = compile(entry);
+        }
+        if (memoCapacity > 0) {
+            expandMemo(entry, args, bw);
+        } else {
+            expand(entry, args, bw);
+        }
+    }
+
+    static void expandMemo(MNTEntry entry, String[] args, Writer out) throws IOException {
+        if (memo == null || memoVersion != mntVersion) {
+            memo = new LinkedHashMap<String, Memo>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, Memo> eldest) {
+                    if (size() <= memoCapacity) {
+                        return false;
+                    }
+                    memoEvictions++;
+                    return true;
+                }
+            };
+            memoVersion = mntVersion;
+        }
+        StringBuilder sb = new StringBuilder(entry.name).append(' ');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(args[i]);
+        }
+        String key = sb.toString();
 
-        LinkedHashMap<String, String> paramMap = new LinkedHashMap<>();
+        Memo hit = memo.get(key);
+        if (hit != null) {
+            memoHits++;
+            if (!quiet) {
+                System.out.print(hit.ala);
+            }
+            out.write(hit.text);
+            return;
+        }
+        memoMisses++;
+        int errors = expansionErrors;
+        capture.reset();
+        StringBuilder ala = new StringBuilder();
+        alaCapture = ala;
+        try {
+            expand(entry, args, capture);
+        } finally {
+            alaCapture = null;
+        }
+        char[] text = capture.toCharArray();
+        if (errors == expansionErrors && memoVersion == mntVersion) {
+            memo.put(key, new Memo(text, ala.toString()));
+        }
+        out.write(text);
+    }
+
+    static String memoSummary() {
+        long calls = memoHits + memoMisses;
+        return String.format("Expansion cache: %d of %d calls hit (%.1f%%), %d cached, %d evicted",
+                memoHits, calls, calls == 0 ? 0.0 : 100.0 * memoHits / calls, memo == null ? 0 : memo.size(), memoEvictions);
+    }
+
+    static void expand(MNTEntry entry, String[] args, Writer bw) throws IOException {
+        if (entry.body.flat()) {
+            values = bind(entry, args, values);
+            printALA(entry, values);
+            expandFlat(entry.body, values, bw);
+            return;
+        }
+        Frame frame = push(entry);
+        frame.values = bind(entry, args, frame.values);
+        printALA(entry, frame.values);
+        run(bw);
+    }
+
+    // Fills values (grown if it is too small) with the actual parameters of
+    // a call to entry, by slot, and returns it. null stands for no value.
+    static String[] bind(MNTEntry entry, String[] args, String[] values) {
+        int params = entry.ppCount + entry.kpCount;
+        if (values.length < params) {
+            values = new String[params];
+        }
 
         // Load keyword param defaults
         for (int i = 0; i < entry.kpCount; i++) {
-            String[] kp = kpdt.get(entry.kpdIndex + i);
-            paramMap.put(kp[0], kp[1]);
+            values[entry.ppCount + i] = kpdt.get(entry.kpdIndex + i)[1];
         }
 
-        // Fill positional params (use names P1, P2, etc.)
-        int posIndex = 0;
-        for (int i = 0; i < Math.min(args.length, entry.ppCount); i++) {
-            paramMap.put("P" + (i + 1), args[i].trim());
-            posIndex++;
+        // Fill positional params
+        int posIndex = Math.min(args.length, entry.ppCount);
+        for (int i = 0; i < posIndex; i++) {
+            values[i] = args[i].trim();
+        }
+        for (int i = posIndex; i < entry.ppCount; i++) {
+            values[i] = null;
         }
 
         // Handle keyword params after positional
         for (int i = posIndex; i < args.length; i++) {
             String arg = args[i].trim();
-            if (arg.contains("=")) {
-                String[] kv = arg.split("=");
-                if (kv.length == 2)
-                    paramMap.put(kv[0].trim(), kv[1].trim());
+            int eq = arg.indexOf('=');
+            if (eq < 0 || eq != arg.lastIndexOf('=')) {
+                continue;
+            }
+            int keyStart = arg.charAt(0) == '&' ? 1 : 0; // &NAME=value as well as NAME=value
+            int keyEnd = eq;
+            while (keyEnd > 0 && arg.charAt(keyEnd - 1) <= ' ') {
+                keyEnd--;
+            }
+            String value = arg.substring(eq + 1).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            String[] names = entry.body.names;
+            for (int k = 0; k < params; k++) {
+                if (names[k].length() == keyEnd - keyStart && arg.startsWith(names[k], keyStart)) {
+                    values[k] = value;
+                    break;
+                }
             }
         }
+        return values;
+    }
 
-        /// --- Print ALA/APDTAB for this macro call in proper order ---
-        System.out.println("----- Macro call: " + macroName + " -----");
-        System.out.println("Parameter List (ALA):");
+    /// --- Print ALA/APDTAB for this macro call in proper order ---
+    static void printALA(MNTEntry entry, String[] values) {
+        if (quiet) {
+            return;
+        }
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("----- Macro call: ").append(entry.name).append(" -----").append(nl);
+        sb.append("Parameter List (ALA):").append(nl);
 
         // 1. Positional parameters: P1, P2, ...
-        for (int i = 1; i <= entry.ppCount; i++) {
-            String key = "P" + i;
-            String val = paramMap.get(key);
-            if (val != null) {
-                System.out.printf("  %s = %s%n", key, val);
+        for (int i = 0; i < entry.ppCount; i++) {
+            if (values[i] != null) {
+                sb.append("  ").append(entry.body.names[i]).append(" = ").append(values[i]).append(nl);
             }
         }
 
         // 2. Keyword parameters in order from KPDTAB
         for (int i = 0; i < entry.kpCount; i++) {
-            String key = kpdt.get(entry.kpdIndex + i)[0];
-            String val = paramMap.get(key);
+            String val = values[entry.ppCount + i];
             if (val != null) {
-                System.out.printf("  %s = %s%n", key, val);
+                sb.append("  ").append(entry.body.names[entry.ppCount + i]).append(" = ").append(val).append(nl);
             }
         }
 
-        System.out.println("----------------------------");
+        sb.append("----------------------------").append(nl);
+        System.out.print(sb);
+        if (alaCapture != null) {
+            alaCapture.append(sb);
+        }
+    }
 
-        // Expand MDT lines with substitutions
-        int mdtIndex = entry.mdtIndex;
-        while (!mdt.get(mdtIndex).equalsIgnoreCase("MEND")) {
-            String line = mdt.get(mdtIndex);
-            for (Map.Entry<String, String> e : paramMap.entrySet()) {
-                line = line.replace("&" + e.getKey(), e.getValue());
+    // Expands the compiled body in one go: text, value, text, value, ..., text
+    static void expandFlat(Template body, String[] values, Writer bw) throws IOException {
+        StringBuilder sb = expansion;
+        sb.setLength(0);
+        for (int i = 0; i < body.slot.length; i++) {
+            sb.append(body.text[i]);
+            String value = values[body.slot[i]];
+            sb.append(value != null ? value : body.ref[i]);
+        }
+        sb.append(body.text[body.slot.length]);
+        write(sb, bw);
+        if (unexpanded != null && body.headsAddedTo != unexpanded) {
+            Collections.addAll(unexpanded, body.head); // a flat body's heads are all literal
+            body.headsAddedTo = unexpanded;
+        }
+    }
+
+    // Expands the calls on the expansion stack, a line at a time. A line
+    // that calls a macro pushes a frame for it instead of recursing, so the
+    // nesting depth is bounded by maxDepth rather than the Java stack; a
+    // macro that is already on the stack is not called again, as nothing
+    // could ever stop that recursion. Lines between MACRO and its MEND are
+    // collected, parameters substituted, and become a new macro.
+    static void run(Writer bw) throws IOException {
+        StringBuilder sb = expansion;
+        List<String> definition = null;
+        int level = 0;
+
+        while (depth > 0) {
+            Frame frame = stack[depth - 1];
+            Template body = frame.entry.body;
+            if (frame.line == body.head.length) {
+                frame.entry.active = false;
+                depth--;
+                if (definition != null) {
+                    System.err.println("Error: MACRO in " + frame.entry.name + " has no MEND.");
+                    expansionErrors++;
+                    definition = null;
+                }
+                continue;
+            }
+            int l = frame.line++;
+            String[] text = body.lineText[l];
+            int[] slot = body.lineSlot[l];
+            sb.setLength(0);
+            sb.append(text[0]);
+            for (int k = 0; k < slot.length; k++) {
+                String value = frame.values[slot[k]];
+                sb.append(value != null ? value : body.lineRef[l][k]).append(text[k + 1]);
+            }
+            String head = body.head[l];
+            if (head == null) {
+                String trimmed = sb.toString().trim();
+                head = trimmed.isEmpty() ? "" : firstToken(trimmed);
+            }
+
+            if (definition != null) {
+                if (head.equalsIgnoreCase("MACRO")) {
+                    level++;
+                } else if (head.equalsIgnoreCase("MEND") && level-- == 0) {
+                    define(definition);
+                    definition = null;
+                    continue;
+                }
+                definition.add(sb.toString().trim());
+                continue;
+            }
+            if (head.equalsIgnoreCase("MACRO")) {
+                definition = new ArrayList<>();
+                level = 0;
+                continue;
             }
-            bw.write("    " + line + "\n");
-            mdtIndex++;
+
+            MNTEntry callee = mnt.get(head);
+            if (callee != null) {
+                String trimmed = sb.toString().trim();
+                if (callee.active) {
+                    System.err.println("Error: recursive macro call " + chain(callee) + ", left unexpanded: " + trimmed);
+                    expansionErrors++;
+                } else if (depth == maxDepth) {
+                    System.err.println("Error: macro calls nested deeper than " + maxDepth + " (" + chain(callee)
+                            + "), left unexpanded: " + trimmed);
+                    expansionErrors++;
+                } else {
+                    String[] args = arguments(trimmed, head.length());
+                    if (callee.body == null) {
+                        callee.body = compile(callee);
+                    }
+                    if (callee.body.flat()) {
+                        values = bind(callee, args, values);
+                        printALA(callee, values);
+                        expandFlat(callee.body, values, bw);
+                    } else {
+                        Frame next = push(callee);
+                        next.values = bind(callee, args, next.values);
+                        printALA(callee, next.values);
+                    }
+                    continue;
+                }
+            }
+            if (unexpanded != null) {
+                unexpanded.add(head);
+            }
+            bw.write("    ");
+            write(sb, bw);
+            bw.write('\n');
+        }
+    }
+
+    static Frame push(MNTEntry entry) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * depth);
+        }
+        Frame frame = stack[depth];
+        if (frame == null) {
+            frame = stack[depth] = new Frame();
+        }
+        depth++;
+        frame.entry = entry;
+        frame.line = 0;
+        entry.active = true;
+        return frame;
+    }
+
+    // The macros on the stack, outermost first, then callee
+    static String chain(MNTEntry callee) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append(stack[i].entry.name).append(" -> ");
+        }
+        return sb.append(callee.name).toString();
+    }
+
+    // Adds the macro a body defined to the MNT: lines holds its prototype
+    // and then its body, up to but not including its MEND
+    static void define(List<String> lines) {
+        if (lines.isEmpty()) {
+            System.err.println("Error: MACRO without a prototype.");
+            expansionErrors++;
+            return;
+        }
+        String[] parts = lines.get(0).split("\\s+");
+        List<String> positional = new ArrayList<>();
+        int kpdIndex = kpdt.size();
+        int kpCount = 0;
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].replaceAll("[&,]", "");
+            if (param.isEmpty()) {
+                continue;
+            }
+            if (param.contains("=")) {
+                String[] kv = param.split("=");
+                kpdt.add(new String[] { kv[0], kv.length == 2 ? kv[1] : "-" });
+                kpCount++;
+            } else {
+                positional.add(param);
+            }
+        }
+        int mdtIndex = mdt.size();
+        mdt.addAll(lines.subList(1, lines.size()));
+        mdt.add("MEND");
+
+        MNTEntry entry = new MNTEntry(parts[0], positional.size(), kpCount, mdtIndex, kpdIndex);
+        entry.positional = positional.toArray(new String[0]);
+        mnt.put(entry.name, entry);
+        mntVersion++;
+    }
+
+    // BufferedWriter has no write(CharSequence) that doesn't make a String first
+    static void write(StringBuilder sb, Writer out) throws IOException {
+        int n = sb.length();
+        if (chars.length < n) {
+            chars = new char[Math.max(n, 2 * chars.length)];
         }
+        sb.getChars(0, n, chars, 0);
+        out.write(chars, 0, n);
     }
 }
@@ -0,0 +1,362 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes synthetic programs in the dialect of this project for benchmarking
+ * and load testing: plain assembly for the assemblers, and assembly with
+ * macro definitions and calls for the macro processors.
+ *
+ * The program goes straight to a Writer, line by line, and nothing but a few
+ * counters is kept, so it can be gigabytes long (--size=2G). The same knobs
+ * and seed always give the same program, byte for byte.
+ *
+ * The body uses the whole dialect: START, the MOT mnemonics with registers,
+ * symbols and literals, READ/PRINT, BC with all six condition codes, labels,
+ * EQU to a DS area (a forward reference), to a constant or to a label plus
+ * an offset, ORIGIN forward past a gap, LTORG, and DS/DC for every data
+ * symbol after the final STOP.
+ *
+ * The assembled program also runs (see Emulator) from START to its STOP:
+ * branches only go forward, LTORG pools and ORIGIN gaps are jumped over, DIV
+ * only divides by nonzero constants, and MOVEM and READ only store into DS
+ * areas, never into code, literals or DC constants. Only the EQUs that name
+ * a DS area are used as operands, so no instruction reads code as data.
+ *
+ * The macro program starts with MACRO/MEND definitions with positional
+ * parameters and keyword parameters with and without defaults, and mixes
+ * calls to them into the same body.
+ *
+ * Knobs:
+ *   statements      number of statements in the body
+ *   size            bytes of body to write instead (K, M, G suffixes); the DS/DC
+ *                   for the data symbols come on top
+ *   symbolDensity   distinct data symbols per statement (0.1 = one per ten statements)
+ *   literalDensity  fraction of instructions whose operand is a literal
+ *   labelDensity    fraction of instructions with a label
+ *   branchDensity   fraction of statements that are BC
+ *   equDensity      fraction of statements that are EQU
+ *   gapDensity      fraction of labelled instructions followed by an ORIGIN gap
+ *   ioDensity       fraction of statements that are READ or PRINT
+ *   ltorgEvery      statements between LTORGs (0 = one pool at END)
+ *   macros          number of macro definitions
+ *   macroBodyLines  instructions in each macro body
+ *   macroNesting    how deep macro bodies call earlier macros (0 = no nesting)
+ *   callDensity     fraction of statements that are macro calls (macro program only)
+ *   seed            random seed
+ */
+class ProgramGenerator {
+
+    static final String[] INSTRUCTIONS = {"ADD", "SUB", "MULT", "MOVER", "MOVEM", "COMP", "DIV"};
+    static final String[] REGISTERS = {"AREG", "BREG", "CREG", "DREG"};
+    static final String[] CONDITIONS = {"LT", "LTE", "EQ", "GT", "GTE", "ANY"};
+
+    int statements = 100000;
+    long size = 0;
+    double symbolDensity = 0.1;
+    double literalDensity = 0.3;
+    double labelDensity = 0.05;
+    double branchDensity = 0.05;
+    double equDensity = 0.005;
+    double gapDensity = 0.01;
+    double ioDensity = 0.01;
+    int ltorgEvery = 500;
+    int macros = 20;
+    int macroBodyLines = 4;
+    int macroNesting = 0;
+    double callDensity = 0.25;
+    long seed = 42;
+
+    // what the last write*() produced
+    long statementsWritten;
+    long bytesWritten;
+
+    /**
+     * Sets knobs from "--name=value" arguments and returns the rest.
+     */
+    List<String> configure(String[] args) {
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq > 2 && arg.startsWith("--") ? arg.substring(2, eq) : "";
+            String value = eq > 0 ? arg.substring(eq + 1) : "";
+            switch (name) {
+                case "statements": statements = Integer.parseInt(value); break;
+                case "size": size = parseSize(value); break;
+                case "symbolDensity": symbolDensity = Double.parseDouble(value); break;
+                case "literalDensity": literalDensity = Double.parseDouble(value); break;
+                case "labelDensity": labelDensity = Double.parseDouble(value); break;
+                case "branchDensity": branchDensity = Double.parseDouble(value); break;
+                case "equDensity": equDensity = Double.parseDouble(value); break;
+                case "gapDensity": gapDensity = Double.parseDouble(value); break;
+                case "ioDensity": ioDensity = Double.parseDouble(value); break;
+                case "ltorgEvery": ltorgEvery = Integer.parseInt(value); break;
+                case "macros": macros = Integer.parseInt(value); break;
+                case "macroBodyLines": macroBodyLines = Integer.parseInt(value); break;
+                case "macroNesting": macroNesting = Integer.parseInt(value); break;
+                case "callDensity": callDensity = Double.parseDouble(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                default: rest.add(arg);
+            }
+        }
+        return rest;
+    }
+
+    /**
+     * "512", "64K", "100M", "2G" -> bytes.
+     */
+    static long parseSize(String value) {
+        String v = value.trim().toUpperCase();
+        long unit = 1;
+        char last = v.charAt(v.length() - 1);
+        if (last == 'K' || last == 'M' || last == 'G') {
+            unit = last == 'K' ? 1L << 10 : last == 'M' ? 1L << 20 : 1L << 30;
+            v = v.substring(0, v.length() - 1);
+        }
+        return (long) (Double.parseDouble(v) * unit);
+    }
+
+    int symbolCount() {
+        return Math.max(1, (int) (statements * symbolDensity));
+    }
+
+    /**
+     * Counts the characters written through it; the generator only writes
+     * ASCII, so that is the file size.
+     */
+    static class CountingWriter extends FilterWriter {
+        long count;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * The state of one body being written. Data symbols S0.. are handed out
+     * as the body grows and all defined after STOP; labels L0.. are defined
+     * in order on instructions, and a branch targets one of the next few, so
+     * every label referred to is defined before STOP.
+     */
+    private class Body {
+        final Random rnd;
+        final CountingWriter w;
+        final boolean calls;
+        long statement = 0;
+        int symbols = 1;            // S0 .. S(symbols-1) may be used
+        int labels = 0;             // L0 .. L(labels-1) are defined
+        int labelsNeeded = 0;       // labels that must be defined before STOP
+        int equs = 0;               // E0 .. E(equs-1) are defined, the even ones name DS areas
+        boolean gapAllowed = false; // the last statement was a labelled instruction
+
+        Body(Random rnd, CountingWriter w, boolean calls) {
+            this.rnd = rnd;
+            this.w = w;
+            this.calls = calls;
+        }
+
+        boolean more() {
+            return size > 0 ? w.count < size : statement < statements;
+        }
+
+        void write() throws IOException {
+            w.write("START\t100\n");
+            while (more()) {
+                statement++;
+                symbols = (int) Math.max(symbols, statement * symbolDensity);
+                statement();
+            }
+            while (labels < labelsNeeded) {
+                instruction(true);
+            }
+            w.write("STOP\n");
+            for (int i = 0; i < symbols; i++) {
+                if (i % 2 == 0) {
+                    w.write("S" + i + "\tDS\t" + (1 + rnd.nextInt(3)) + "\n");
+                } else {
+                    w.write("S" + i + "\tDC\t" + (1 + rnd.nextInt(999)) + "\n");
+                }
+            }
+            w.write("END\n");
+        }
+
+        private void statement() throws IOException {
+            if (ltorgEvery > 0 && statement % ltorgEvery == 0) {
+                jumpOver("LTORG");
+                return;
+            }
+            if (gapAllowed && rnd.nextDouble() < gapDensity) {
+                // the previous instruction is L(labels-1), the BC goes right after it
+                jumpOver("ORIGIN\tL" + (labels - 1) + "+" + (3 + rnd.nextInt(16)));
+                return;
+            }
+            gapAllowed = false;
+            double p = rnd.nextDouble();
+            if (calls && (p -= callDensity) < 0) {
+                call();
+            } else if ((p -= branchDensity) < 0) {
+                int target = labels + 1 + rnd.nextInt(4);
+                labelsNeeded = Math.max(labelsNeeded, target + 1);
+                w.write("BC\t" + CONDITIONS[rnd.nextInt(CONDITIONS.length)] + ", L" + target + "\n");
+            } else if ((p -= equDensity) < 0) {
+                if (equs % 2 == 0) {
+                    w.write("E" + equs + "\tEQU\t" + storage() + "\n");
+                } else if (labels > 0 && rnd.nextBoolean()) {
+                    w.write("E" + equs + "\tEQU\tL" + rnd.nextInt(labels) + "+" + rnd.nextInt(10) + "\n");
+                } else {
+                    w.write("E" + equs + "\tEQU\t" + (100 + rnd.nextInt(1000)) + "\n");
+                }
+                equs++;
+            } else if ((p -= ioDensity) < 0) {
+                w.write(rnd.nextBoolean() ? "READ\t" + storage() + "\n" : "PRINT\tS" + rnd.nextInt(symbols) + "\n");
+            } else {
+                instruction(rnd.nextDouble() < labelDensity);
+            }
+        }
+
+        /**
+         * An unconditional branch over a directive that places something
+         * other than code where execution would run on (a literal pool, an
+         * ORIGIN gap), landing on the next, labelled, instruction.
+         */
+        private void jumpOver(String directive) throws IOException {
+            w.write("BC\tANY, L" + labels + "\n");
+            w.write(directive + "\n");
+            instruction(true);
+        }
+
+        // a DS area, safe to store into: the even-numbered data symbols
+        private String storage() {
+            return "S" + 2 * rnd.nextInt((symbols + 1) / 2);
+        }
+
+        private void instruction(boolean labelled) throws IOException {
+            if (labelled) {
+                w.write("L" + labels++ + "\t");
+                gapAllowed = true;
+            }
+            String op = INSTRUCTIONS[rnd.nextInt(INSTRUCTIONS.length)];
+            w.write(op);
+            w.write('\t');
+            w.write(REGISTERS[rnd.nextInt(REGISTERS.length)]);
+            w.write(", ");
+            double p = rnd.nextDouble();
+            if (op.equals("MOVEM")) {
+                w.write(storage() + "\n");
+            } else if (op.equals("DIV")) {
+                // a nonzero literal, or a DC constant (odd-numbered data symbols)
+                if (p < literalDensity || symbols < 2) {
+                    w.write("='" + (1 + rnd.nextInt(99)) + "'\n");
+                } else {
+                    w.write("S" + (1 + 2 * rnd.nextInt(symbols / 2)) + "\n");
+                }
+            } else if (p < literalDensity) {
+                w.write("='" + rnd.nextInt(100) + "'\n");
+            } else if (equs > 0 && p < literalDensity + 0.02) {
+                w.write("E" + 2 * rnd.nextInt((equs + 1) / 2) + "\n");
+            } else {
+                w.write("S" + rnd.nextInt(symbols) + "\n");
+            }
+        }
+
+        private void call() throws IOException {
+            int m = rnd.nextInt(macros);
+            w.write("M" + m + "\tS" + rnd.nextInt(symbols) + ", S" + rnd.nextInt(symbols));
+            if (rnd.nextBoolean()) {
+                w.write(", R=" + REGISTERS[rnd.nextInt(REGISTERS.length)]); // else the default, AREG
+            }
+            w.write(", S=" + REGISTERS[rnd.nextInt(REGISTERS.length)] + "\n");
+        }
+    }
+
+    /**
+     * A program for the assemblers.
+     */
+    void writeAssembly(Writer out) throws IOException {
+        CountingWriter w = new CountingWriter(out);
+        Body body = new Body(new Random(seed), w, false);
+        body.write();
+        w.flush();
+        statementsWritten = body.statement;
+        bytesWritten = w.count;
+    }
+
+    /**
+     * A program for the macro processors: the macro definitions, then a body
+     * with macro calls mixed in. Macro i has two positional parameters and
+     * two keyword parameters, one with a default and one without; with
+     * macroNesting > 0 its body also calls macro i-1, down to macroNesting
+     * levels.
+     */
+    void writeMacroProgram(Writer out) throws IOException {
+        CountingWriter w = new CountingWriter(out);
+        Random rnd = new Random(seed);
+        for (int m = 0; m < macros; m++) {
+            w.write("MACRO\n");
+            w.write("M" + m + "\t&X, &Y, &R=AREG, &S=\n");
+            for (int i = 0; i < macroBodyLines; i++) {
+                String op = INSTRUCTIONS[rnd.nextInt(INSTRUCTIONS.length)];
+                if (i % 2 == 0) {
+                    w.write(op + "\t&R, &X\n");
+                } else if (rnd.nextDouble() < literalDensity) {
+                    w.write(op + "\t&S, ='" + rnd.nextInt(100) + "'\n");
+                } else {
+                    w.write(op + "\t&S, &Y\n");
+                }
+            }
+            if (macroNesting > 0 && m % (macroNesting + 1) != 0) {
+                w.write("M" + (m - 1) + "\t&Y, &X\n");
+            }
+            w.write("MEND\n");
+        }
+        Body body = new Body(rnd, w, macros > 0);
+        body.write();
+        w.flush();
+        statementsWritten = body.statement;
+        bytesWritten = w.count;
+    }
+
+    /**
+     *   java ProgramGenerator [--knob=value ...] [--macro] output.asm
+     */
+    public static void main(String[] args) throws IOException {
+        ProgramGenerator g = new ProgramGenerator();
+        List<String> rest = g.configure(args);
+        boolean macro = rest.remove("--macro");
+        if (rest.size() != 1) {
+            System.err.println("Usage: java ProgramGenerator [--statements=N | --size=BYTES[K|M|G]] [--seed=S] [--macro]"
+                    + " [--symbolDensity=D] [--literalDensity=D] [--labelDensity=D] [--branchDensity=D]"
+                    + " [--equDensity=D] [--gapDensity=D] [--ioDensity=D] [--ltorgEvery=N] [--macros=N]"
+                    + " [--macroBodyLines=N] [--macroNesting=N] [--callDensity=D] output.asm");
+            return;
+        }
+        long start = System.nanoTime();
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rest.get(0)), "US-ASCII"), 1 << 16)) {
+            if (macro) {
+                g.writeMacroProgram(w);
+            } else {
+                g.writeAssembly(w);
+            }
+        }
+        long ms = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.err.println("Wrote " + g.statementsWritten + " statement(s), " + g.bytesWritten + " byte(s) to "
+                + rest.get(0) + " in " + ms + " ms (" + g.bytesWritten / 1000 / ms + " MB/s)");
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import bench.Workloads;
+
+/**
+ * Sets up the hot paths of the tool chain on programs from ProgramGenerator
+ * for the JMH benchmarks in bench.Toolchain:
+ *
+ *   pass1ProcessLine     Pass1Assembler.processLine (assignment-1a), on every source line
+ *   pass2ProcessIC       Pass2Assembler.processIC (assignment-2), on the program's text IC
+ *   macro1Definitions    MacroPass1.build (assignment-3), on a program with macros
+ *   macro2ExpandMacro    macroPass2.expandMacro (assignment-4), one call per statement
+ *
+ * The generated files go into a temporary directory that close() deletes.
+ */
+public class ToolchainBenchmarks implements Workloads {
+
+    /**
+     * IC sink that throws the records away, so pass 1 is timed on its own.
+     */
+    static class DiscardingSink implements ICSink {
+        public void write(ICRecord record) { }
+        public void close() { }
+    }
+
+    final ProgramGenerator generator;
+    final Path work;
+
+    /**
+     * @param knobs ProgramGenerator knobs, "--name=value".
+     */
+    public ToolchainBenchmarks(String[] knobs) throws IOException {
+        generator = new ProgramGenerator();
+        List<String> unknown = generator.configure(knobs);
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown generator knob: " + unknown.get(0));
+        }
+        work = Files.createTempDirectory("toolchain-bench");
+    }
+
+    static String[] readLines(Path file) throws IOException {
+        return Files.readAllLines(file).toArray(new String[0]);
+    }
+
+    Path generate(String name, boolean macro) throws IOException {
+        Path file = work.resolve(name);
+        try (Writer w = Files.newBufferedWriter(file)) {
+            if (macro) {
+                generator.writeMacroProgram(w);
+            } else {
+                generator.writeAssembly(w);
+            }
+        }
+        return file;
+    }
+
+    static Pass1Assembler pass1(String[] lines, ICSink sink) throws IOException {
+        Pass1Assembler assembler = new Pass1Assembler();
+        assembler.setQuiet(true);
+        assembler.openIntermediateCodeStream(sink);
+        for (String line : lines) {
+            assembler.processLine(line);
+        }
+        assembler.closeIntermediateCodeStream();
+        return assembler;
+    }
+
+    public Callable<Object> pass1ProcessLine() throws IOException {
+        String[] lines = readLines(generate("pass1.asm", false));
+        ICSink sink = new DiscardingSink();
+        return () -> pass1(lines, sink);
+    }
+
+    /**
+     * Pass 2 over the text IC of a generated program, with the tables loaded
+     * from pass 1 directly rather than from symtab.txt/littab.txt.
+     */
+    public Callable<Object> pass2ProcessIC() throws IOException {
+        String[] lines = readLines(generate("pass2.asm", false));
+        String ic = work.resolve("pass2.ic.txt").toString();
+        Pass1Assembler p1 = new Pass1Assembler();
+        p1.setQuiet(true);
+        p1.openIntermediateCodeStream(new TextICSink(ic));
+        for (String line : lines) {
+            p1.processLine(line);
+        }
+        p1.closeIntermediateCodeStream();
+
+        Pass2Assembler.quiet = true;
+        Pass2Assembler.symtab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < p1.symbolCount(); i++) {
+            int addr = p1.symbolAddress(i);
+            Pass2Assembler.symtab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+        Pass2Assembler.littab = new Pass2Assembler.AddressTable();
+        for (int i = 0; i < p1.literalCount(); i++) {
+            int addr = p1.literalAddress(i);
+            Pass2Assembler.littab.put(i, addr < 0 ? Pass2Assembler.AddressTable.UNRESOLVED : addr);
+        }
+        return () -> {
+            Pass2Assembler.machineCode = new Pass2Assembler.MachineCode();
+            Pass2Assembler.processIC(ic, new Pass2Assembler.SequentialTranslator());
+            return Pass2Assembler.machineCode;
+        };
+    }
+
+    /**
+     * MacroPass1's definition processing into the in-memory tables, without
+     * writing them out as text.
+     */
+    public Callable<Object> macro1Definitions() throws IOException {
+        String source = generate("macro1.asm", true).toString();
+        return () -> MacroPass1.build(source);
+    }
+
+    /**
+     * macroPass2.expandMacro on one call per statement. The tables are
+     * written in the format macroPass2 reads (positional parameters as &P1,
+     * &P2, keyword parameters by name) and loaded through its own loaders.
+     */
+    public Callable<Object> macro2ExpandMacro() throws IOException {
+        Random rnd = new Random(generator.seed);
+        Path dir = Files.createDirectories(work.resolve("macro2"));
+        try (PrintWriter mnt = new PrintWriter(Files.newBufferedWriter(dir.resolve("mnt.txt")));
+             PrintWriter mdt = new PrintWriter(Files.newBufferedWriter(dir.resolve("mdt.txt")));
+             PrintWriter kpd = new PrintWriter(Files.newBufferedWriter(dir.resolve("kpdtab.txt")))) {
+            int mdtIndex = 0;
+            for (int m = 0; m < generator.macros; m++) {
+                mnt.println("M" + m + " 2 2 " + mdtIndex + " " + 2 * m);
+                kpd.println("R AREG");
+                kpd.println("S -");
+                for (int i = 0; i < generator.macroBodyLines; i++) {
+                    String op = ProgramGenerator.INSTRUCTIONS[rnd.nextInt(ProgramGenerator.INSTRUCTIONS.length)];
+                    mdt.println(i % 2 == 0 ? op + " &R, &P1" : op + " &S, &P2");
+                    mdtIndex++;
+                }
+                mdt.println("MEND");
+                mdtIndex++;
+            }
+        }
+        macroPass2.mnt.clear();
+        macroPass2.mdt.clear();
+        macroPass2.kpdt.clear();
+        macroPass2.loadMNT(dir.resolve("mnt.txt").toString());
+        macroPass2.loadMDT(dir.resolve("mdt.txt").toString());
+        macroPass2.loadKPDTAB(dir.resolve("kpdtab.txt").toString());
+        macroPass2.quiet = true;
+
+        int symbols = generator.symbolCount();
+        String[] names = new String[generator.statements];
+        String[][] args = new String[generator.statements][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "M" + rnd.nextInt(generator.macros);
+            args[i] = ("S" + rnd.nextInt(symbols) + ", S" + rnd.nextInt(symbols) + ", S="
+                    + ProgramGenerator.REGISTERS[rnd.nextInt(ProgramGenerator.REGISTERS.length)]).split(",");
+        }
+        BufferedWriter out = new BufferedWriter(Writer.nullWriter());
+        return () -> {
+            for (int i = 0; i < names.length; i++) {
+                macroPass2.expandMacro(names[i], args[i], out);
+            }
+            out.flush();
+            return out;
+        };
+    }
+
+    public void close() throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.walk(work)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
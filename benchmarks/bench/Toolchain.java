@@ -0,0 +1,134 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks for the hot paths of the tool chain. Each invocation runs
+ * one of them over a whole generated program, so the score is the time per
+ * program:
+ *
+ *   pass1ProcessLine     Pass1Assembler.processLine (assignment-1a) on every source line
+ *   pass2ProcessIC       Pass2Assembler.processIC (assignment-2) on the program's text IC
+ *   macro1Definitions    MacroPass1.build (assignment-3) on a program with macros
+ *   macro2ExpandMacro    macroPass2.expandMacro (assignment-4), one call per statement
+ *
+ * The program is shaped by the parameters below, which are ProgramGenerator
+ * knobs of the same name and can be overridden with -p, e.g.
+ *
+ *   mvn -B package
+ *   java -jar target/benchmarks.jar -p statements=1000000 -p macroNesting=2
+ *   java -jar target/benchmarks.jar pass1 -rf json -rff pass1.json
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class Toolchain {
+
+    /**
+     * The generated program and one workload set up on it. Every benchmark
+     * has its own subclass, so a fork only generates the input it runs on.
+     */
+    @State(Scope.Benchmark)
+    public abstract static class Program {
+        @Param("100000")
+        public int statements;
+
+        @Param("0.1")
+        public double symbolDensity;
+
+        @Param("0.3")
+        public double literalDensity;
+
+        @Param("20")
+        public int macros;
+
+        @Param("4")
+        public int macroBodyLines;
+
+        @Param("0")
+        public int macroNesting;
+
+        @Param("42")
+        public long seed;
+
+        Workloads workloads;
+        Callable<?> workload;
+
+        abstract Callable<?> workload(Workloads workloads) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workloads = Workloads.create(
+                    "--statements=" + statements,
+                    "--symbolDensity=" + symbolDensity,
+                    "--literalDensity=" + literalDensity,
+                    "--macros=" + macros,
+                    "--macroBodyLines=" + macroBodyLines,
+                    "--macroNesting=" + macroNesting,
+                    "--seed=" + seed);
+            workload = workload(workloads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            workloads.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pass1 extends Program {
+        Callable<?> workload(Workloads workloads) throws IOException {
+            return workloads.pass1ProcessLine();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pass2 extends Program {
+        Callable<?> workload(Workloads workloads) throws IOException {
+            return workloads.pass2ProcessIC();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Macro1 extends Program {
+        Callable<?> workload(Workloads workloads) throws IOException {
+            return workloads.macro1Definitions();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Macro2 extends Program {
+        Callable<?> workload(Workloads workloads) throws IOException {
+            return workloads.macro2ExpandMacro();
+        }
+    }
+
+    // Each workload returns what it built, and returning that to JMH keeps
+    // the work from being optimised away.
+
+    @Benchmark
+    public Object pass1ProcessLine(Pass1 program) throws Exception {
+        return program.workload.call();
+    }
+
+    @Benchmark
+    public Object pass2ProcessIC(Pass2 program) throws Exception {
+        return program.workload.call();
+    }
+
+    @Benchmark
+    public Object macro1Definitions(Macro1 program) throws Exception {
+        return program.workload.call();
+    }
+
+    @Benchmark
+    public Object macro2ExpandMacro(Macro2 program) throws Exception {
+        return program.workload.call();
+    }
+}
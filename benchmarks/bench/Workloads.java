@@ -0,0 +1,33 @@
+package bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * The four hot paths, each set up on a program from ProgramGenerator and
+ * returned as a Callable that runs it once over the whole program.
+ *
+ * The tool chain lives in the default package, which JMH does not accept for
+ * benchmark classes and which a named package cannot import, so Toolchain
+ * only sees it through this interface. ToolchainBenchmarks implements it.
+ */
+public interface Workloads extends Closeable {
+
+    Callable<?> pass1ProcessLine() throws IOException;
+
+    Callable<?> pass2ProcessIC() throws IOException;
+
+    Callable<?> macro1Definitions() throws IOException;
+
+    Callable<?> macro2ExpandMacro() throws IOException;
+
+    /**
+     * A ToolchainBenchmarks for the given ProgramGenerator knobs ("--name=value").
+     */
+    static Workloads create(String... knobs) throws ReflectiveOperationException {
+        return (Workloads) Class.forName("ToolchainBenchmarks")
+                .getConstructor(String[].class)
+                .newInstance((Object) knobs);
+    }
+}